@@ -0,0 +1,78 @@
+package info.deskchan.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Routing of message through alternatives chain by CorePlugin. Every alternative except the last one
+ * passes the message further, like DeskChan:say handlers do. **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlternativesBenchmark {
+
+	private static final AtomicInteger counter = new AtomicInteger();
+
+	@Param({"1", "4", "16"})
+	public int chainLength;
+
+	private final PluginManager pluginManager = PluginManager.getInstance();
+	private PluginProxyInterface proxy;
+	private String pluginId;
+	private String srcTag;
+
+	@Setup
+	public void setup() throws Throwable {
+		synchronized (PluginManager.class) {
+			if (pluginManager.getPlugin("core") == null)
+				pluginManager.initialize(new String[0]);
+		}
+
+		int benchmarkId = counter.incrementAndGet();
+		srcTag = "benchmark:route-" + benchmarkId;
+		pluginId = "benchmark-alternatives-" + benchmarkId;
+		pluginManager.initializeInnerPlugin(pluginId, new Plugin() { });
+		proxy = pluginManager.getPlugin(pluginId);
+
+		List<Map<String, Object>> alternatives = new ArrayList<>();
+		for (int i = 0; i < chainLength; i++) {
+			String dstTag = pluginId + ":alternative-" + i;
+			if (i < chainLength - 1)
+				proxy.addMessageListener(dstTag, (sender, tag, data) -> proxy.sendMessage(srcTag + "#" + dstTag, data));
+			else
+				proxy.addMessageListener(dstTag, new MessageBusBenchmark.ConsumingListener());
+
+			Map<String, Object> alternative = new HashMap<>();
+			alternative.put("srcTag", srcTag);
+			alternative.put("dstTag", dstTag);
+			alternative.put("priority", chainLength - i);
+			alternatives.add(alternative);
+		}
+		proxy.sendMessage("core:register-alternatives", alternatives);
+	}
+
+	@TearDown
+	public void tearDown() {
+		pluginManager.unloadPlugin(pluginId);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void routeThroughChain() {
+		proxy.sendMessage(srcTag, "data");
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void routeThroughChainFromFourThreads() {
+		proxy.sendMessage(srcTag, "data");
+	}
+}
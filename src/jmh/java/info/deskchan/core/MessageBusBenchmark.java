@@ -0,0 +1,87 @@
+package info.deskchan.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Fan-out of PluginManager.sendMessage to many listeners of one tag. **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBusBenchmark {
+
+	private static final AtomicInteger counter = new AtomicInteger();
+
+	@Param({"1", "8", "64"})
+	public int listenersCount;
+
+	private final PluginManager pluginManager = PluginManager.getInstance();
+	private final List<MessageListener> listeners = new ArrayList<>();
+	private final Object payload = "data";
+	private String tag;
+
+	@Setup
+	public void setup() {
+		tag = "benchmark:bus-" + counter.incrementAndGet();
+		for (int i = 0; i < listenersCount; i++) {
+			MessageListener listener = new ConsumingListener();
+			listeners.add(listener);
+			pluginManager.registerMessageListener(tag, listener);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		for (MessageListener listener : listeners)
+			pluginManager.unregisterMessageListener(tag, listener);
+		listeners.clear();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void sendMessage() {
+		pluginManager.sendMessage("benchmark", tag, payload);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void sendMessageFromFourThreads() {
+		pluginManager.sendMessage("benchmark", tag, payload);
+	}
+
+	/** Senders while another thread subscribes and unsubscribes to the same tag. **/
+	@Benchmark
+	@Group("registrationChurn")
+	@GroupThreads(3)
+	public void sendMessageWhileRegistering() {
+		pluginManager.sendMessage("benchmark", tag, payload);
+	}
+
+	@Benchmark
+	@Group("registrationChurn")
+	@GroupThreads(1)
+	public void registerAndUnregister(ChurnState state) {
+		pluginManager.registerMessageListener(tag, state.listener);
+		pluginManager.unregisterMessageListener(tag, state.listener);
+	}
+
+	@State(Scope.Thread)
+	public static class ChurnState {
+		final MessageListener listener = new ConsumingListener();
+	}
+
+	static class ConsumingListener implements MessageListener {
+		Object last;
+
+		@Override
+		public void handleMessage(String sender, String tag, Object data) {
+			last = data;
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package info.deskchan.core;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** PluginProxy.sendMessage with response listener: every responder answers to request through the bus. **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseBenchmark {
+
+	private static final AtomicInteger counter = new AtomicInteger();
+
+	@Param({"1", "8", "64"})
+	public int respondersCount;
+
+	private final PluginManager pluginManager = PluginManager.getInstance();
+	private final List<String> plugins = new ArrayList<>();
+	private PluginProxyInterface requester;
+	private String tag;
+
+	@Setup
+	public void setup() throws Throwable {
+		int benchmarkId = counter.incrementAndGet();
+		tag = "benchmark:echo-" + benchmarkId;
+
+		for (int i = 0; i < respondersCount; i++) {
+			String id = "benchmark-responder-" + benchmarkId + "-" + i;
+			pluginManager.initializeInnerPlugin(id, new Plugin() {
+				@Override
+				public boolean initialize(PluginProxyInterface proxy) {
+					proxy.addMessageListener(tag, (sender, tag, data) -> proxy.sendMessage(sender, data));
+					return true;
+				}
+			});
+			plugins.add(id);
+		}
+
+		String id = "benchmark-requester-" + benchmarkId;
+		pluginManager.initializeInnerPlugin(id, new Plugin() { });
+		plugins.add(id);
+		requester = pluginManager.getPlugin(id);
+	}
+
+	@TearDown
+	public void tearDown() {
+		for (String id : plugins)
+			pluginManager.unloadPlugin(id);
+		plugins.clear();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void requestAndCollectResponses(Blackhole blackhole) {
+		requester.sendMessage(tag, "data",
+				(sender, data) -> blackhole.consume(data),
+				(sender, data) -> blackhole.consume(sender)
+		);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void requestAndCollectResponsesFromFourThreads(Blackhole blackhole) {
+		requester.sendMessage(tag, "data",
+				(sender, data) -> blackhole.consume(data),
+				(sender, data) -> blackhole.consume(sender)
+		);
+	}
+}
@@ -0,0 +1,89 @@
+package info.deskchan.core;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Statistics of message bus: how many messages were sent to every tag, how much time listeners spent
+ * handling them and how many errors they thrown. **/
+class BusMetrics {
+
+	private final Map<String, TagMetrics> tags = new ConcurrentHashMap<>();
+	private final long startTime = System.currentTimeMillis();
+
+	/** Get metrics of tag, creating them if needed.
+	 * @param key Tag as it stored in listeners map, with everything after '#' cut **/
+	TagMetrics getTagMetrics(String key) {
+		TagMetrics metrics = tags.get(key);
+		if (metrics == null)
+			metrics = tags.computeIfAbsent(key, k -> new TagMetrics());
+		return metrics;
+	}
+
+	/** Get all metrics as map.
+	 * @param listeners Current listeners map of message bus
+	 * @return Map with fields:
+	 *     uptime: Long - time metrics are collected, ms
+	 *     tags: Map "tag" -> (sent: Long, rate: Double, errors: Long, latency: Map)
+	 *     listeners: List of Maps (tag: String, plugin: String, listener: String, errors: Long, latency: Map),
+	 *                descending by total handling time
+	 *  Latency map contains count, mean, p50, p90, p99 and max fields, time in ms. **/
+	Map<String, Object> toMap(Map<String, PluginManager.Subscriber[]> listeners) {
+		long uptime = System.currentTimeMillis() - startTime;
+
+		Map<String, Object> tagsMap = new HashMap<>();
+		for (Map.Entry<String, TagMetrics> entry : tags.entrySet()) {
+			TagMetrics metrics = entry.getValue();
+			Map<String, Object> map = new HashMap<>();
+			long sent = metrics.sent.sum();
+			map.put("sent", sent);
+			map.put("rate", uptime > 0 ? sent * 1000.0 / uptime : 0.0);
+			map.put("errors", metrics.errors.sum());
+			map.put("latency", metrics.latency.toMap());
+			tagsMap.put(entry.getKey(), map);
+		}
+
+		List<PluginManager.Subscriber> subscribers = new ArrayList<>();
+		for (PluginManager.Subscriber[] array : listeners.values())
+			subscribers.addAll(Arrays.asList(array));
+		subscribers.sort((s1, s2) -> Double.compare(s2.latency.getTotal(), s1.latency.getTotal()));
+
+		List<Map<String, Object>> listenersList = new ArrayList<>();
+		for (PluginManager.Subscriber subscriber : subscribers) {
+			Map<String, Object> map = new HashMap<>();
+			map.put("tag", subscriber.tag);
+			map.put("plugin", subscriber.getPluginId());
+			map.put("listener", subscriber.listener.getClass().getName());
+			map.put("errors", subscriber.errors.sum());
+			map.put("latency", subscriber.latency.toMap());
+			listenersList.add(map);
+		}
+
+		Map<String, Object> result = new HashMap<>();
+		result.put("uptime", uptime);
+		result.put("tags", tagsMap);
+		result.put("listeners", listenersList);
+		return result;
+	}
+
+	/** Write metrics to file in JSON format. **/
+	void dump(Path path, Map<String, PluginManager.Subscriber[]> listeners) {
+		try {
+			Files.write(path, new JSONObject(toMap(listeners)).toString(2).getBytes(Charset.forName("UTF-8")));
+		} catch (IOException e) {
+			PluginManager.log(e);
+		}
+	}
+
+	static class TagMetrics {
+		final LongAdder sent = new LongAdder();
+		final LongAdder errors = new LongAdder();
+		final LatencyHistogram latency = new LatencyHistogram();
+	}
+}
@@ -46,12 +46,18 @@ public class CommandsProxy{
     /** All command links registered by plugins by default. **/
     private static LinkContainer defaultCommandLinks = new LinkContainer();
 
+    /** Guards all containers above, as plugins register commands while they are loaded in parallel.
+     * Messages are sent outside of lock, so listeners can call back here from any thread. **/
+    private static final Object lock = new Object();
+
 
     /** Resets links list to default, set by plugins. **/
     public static void reset(){
-        commandLinks = defaultCommandLinks.clone();
+        synchronized (lock) {
+            commandLinks = defaultCommandLinks.clone();
+        }
         sendNotify();
-        for(String event : events.map.keySet())
+        for(String event : getEventsList())
             sendUpdateByEvent(event);
     }
 
@@ -67,7 +73,9 @@ public class CommandsProxy{
 
         data.remove("tag", tag);
         data.put("owner", sender);
-        commands.put(tag, data);
+        synchronized (lock) {
+            commands.put(tag, data);
+        }
 
         sendNotify();
         sendUpdateByCommand(tag);
@@ -80,9 +88,15 @@ public class CommandsProxy{
             PluginManager.log("No name specified for command to remove, recieved null");
             return;
         }
-        Map<String, Object> command = commands.get(tag);
-        if(sender.equals("core") || command.get("owner").equals(sender)) {
-            commands.remove(tag);
+        boolean removed = false;
+        synchronized (lock) {
+            Map<String, Object> command = commands.get(tag);
+            if (sender.equals("core") || command.get("owner").equals(sender)) {
+                commands.remove(tag);
+                removed = true;
+            }
+        }
+        if(removed) {
             sendNotify();
             sendUpdateByCommand(tag);
         } else
@@ -100,7 +114,9 @@ public class CommandsProxy{
 
         data.remove("tag", tag);
         data.put("owner", sender);
-        events.put(tag, data);
+        synchronized (lock) {
+            events.put(tag, data);
+        }
         sendNotify();
         sendUpdateByEvent(tag);
     }
@@ -112,9 +128,15 @@ public class CommandsProxy{
             PluginManager.log("No name specified for event to remove, recieved null");
             return;
         }
-        Map<String,Object> event = events.get(tag);
-        if(sender.equals("core") || event.get("owner").equals(sender)) {
-            events.remove(tag);
+        boolean removed = false;
+        synchronized (lock) {
+            Map<String, Object> event = events.get(tag);
+            if (sender.equals("core") || event.get("owner").equals(sender)) {
+                events.remove(tag);
+                removed = true;
+            }
+        }
+        if(removed) {
             sendNotify();
             sendUpdateByEvent(tag);
         } else
@@ -136,9 +158,11 @@ public class CommandsProxy{
             PluginManager.log("No target command name specified to add event link");
 
         Link link = new Link(rule, msgData);
-        if(isDefault)
-            defaultCommandLinks.add(eventName, commandName, link);
-        commandLinks.add(eventName, commandName, link);
+        synchronized (lock) {
+            if (isDefault)
+                defaultCommandLinks.add(eventName, commandName, link);
+            commandLinks.add(eventName, commandName, link);
+        }
 
         sendNotify();
         sendUpdateByEvent(eventName);
@@ -161,8 +185,10 @@ public class CommandsProxy{
      * @param commandName Command name
      * @param rule Rule  **/
     public static void removeEventLink(String eventName, String commandName, String rule){
-        commandLinks.remove(eventName, commandName, rule);
-        defaultCommandLinks.remove(eventName, commandName, rule);
+        synchronized (lock) {
+            commandLinks.remove(eventName, commandName, rule);
+            defaultCommandLinks.remove(eventName, commandName, rule);
+        }
 
         sendNotify();
         sendUpdateByEvent(eventName);
@@ -173,8 +199,10 @@ public class CommandsProxy{
      * @param eventName Event name
      * @param commandName Command name  **/
     public static void removeEventLink(String eventName, String commandName){
-        commandLinks.remove(eventName, commandName);
-        defaultCommandLinks.remove(eventName, commandName);
+        synchronized (lock) {
+            commandLinks.remove(eventName, commandName);
+            defaultCommandLinks.remove(eventName, commandName);
+        }
 
         sendNotify();
         sendUpdateByEvent(eventName);
@@ -204,20 +232,22 @@ public class CommandsProxy{
             return ar;
         }
 
-        Map<String, ArrayList<Link>> map = commandLinks.get(eventName);
-        if(map == null)
-            return ar;
+        synchronized (lock) {
+            Map<String, ArrayList<Link>> map = commandLinks.get(eventName);
+            if (map == null)
+                return ar;
 
-        for(Map.Entry<String, ArrayList<Link>> entry : map.entrySet()) {
-            Map command = commands.get(entry.getKey());
-            if (command == null) continue;
+            for (Map.Entry<String, ArrayList<Link>> entry : map.entrySet()) {
+                Map command = commands.get(entry.getKey());
+                if (command == null) continue;
 
-            for (Link link : entry.getValue()) {
-                HashMap<String, Object> copy = new HashMap<>();
-                copy.put("tag", entry.getKey());
-                if (link.rule != null)    copy.put("rule", link.rule);
-                if (link.msgData != null) copy.put("msgData", link.msgData);
-                ar.add(copy);
+                for (Link link : entry.getValue()) {
+                    HashMap<String, Object> copy = new HashMap<>();
+                    copy.put("tag", entry.getKey());
+                    if (link.rule != null)    copy.put("rule", link.rule);
+                    if (link.msgData != null) copy.put("msgData", link.msgData);
+                    ar.add(copy);
+                }
             }
         }
         return ar;
@@ -225,38 +255,50 @@ public class CommandsProxy{
 
     /** Get list of all commands names. **/
     public static ArrayList<String> getCommandsList(){
-        return new ArrayList<>(commands.map.keySet());
+        synchronized (lock) {
+            return new ArrayList<>(commands.map.keySet());
+        }
     }
 
     /** Get information about command. **/
     public static Map<String, Object> getCommandInfo(String command){
-        return commands.get(command) != null ? new HashMap<>(commands.get(command)) : null;
+        synchronized (lock) {
+            return commands.get(command) != null ? new HashMap<>(commands.get(command)) : null;
+        }
     }
 
     /** Get list of all event names. **/
     public static ArrayList<String> getEventsList(){
-        return new ArrayList<>(events.map.keySet());
+        synchronized (lock) {
+            return new ArrayList<>(events.map.keySet());
+        }
     }
 
     /** Get information about event. **/
     public static Map<String, Object> getEventInfo(String command){
-        return events.get(command) != null ? new HashMap<>(events.get(command)) : null;
+        synchronized (lock) {
+            return events.get(command) != null ? new HashMap<>(events.get(command)) : null;
+        }
     }
 
     /** Get list of all links. **/
     public static ArrayList<Map<String,Object>> getLinksList(){
-        return commandLinks.getLinksList();
+        synchronized (lock) {
+            return commandLinks.getLinksList();
+        }
     }
 
     /** Fill links list from map. **/
     public static void setLinks(List<Map<String, Object>> newData){
-        commandLinks.clear();
+        synchronized (lock) {
+            commandLinks.clear();
+        }
 
         for(Map<String,Object> data : newData)
             addEventLink(data);
 
         sendNotify();
-        for(String event : events.map.keySet())
+        for(String event : getEventsList())
             sendUpdateByEvent(event);
     }
 
@@ -294,9 +336,11 @@ public class CommandsProxy{
      */
     private static void sendUpdateByCommand(String commandName){
         Set<String> toUpdate = new HashSet<>();
-        for(MatrixMap.Entry entry : commandLinks.entrySet()){
-            if(entry.key2.equals(commandName))
-                toUpdate.add((String) entry.key1);
+        synchronized (lock) {
+            for (MatrixMap.Entry entry : commandLinks.entrySet()) {
+                if (entry.key2.equals(commandName))
+                    toUpdate.add((String) entry.key1);
+            }
         }
         for(String event : toUpdate){
             proxy.sendMessage("core:update-links:"+event, getCommandsMatch(event));
@@ -319,19 +363,21 @@ public class CommandsProxy{
         });
 
         proxy.addMessageListener("core-events:plugin-unload", (sender, tag, data) -> {
-            Iterator i = commands.map.entrySet().iterator();
-            while (i.hasNext()) {
-                Map.Entry entry = (Map.Entry) i.next();
-                Map map = (Map) entry.getValue();
-                if (map.get("owner").equals(data))
-                    i.remove();
-            }
-            i = events.map.entrySet().iterator();
-            while (i.hasNext()) {
-                Map.Entry entry = (Map.Entry) i.next();
-                Map map = (Map) entry.getValue();
-                if (map.get("owner").equals(data))
-                    i.remove();
+            synchronized (lock) {
+                Iterator i = commands.map.entrySet().iterator();
+                while (i.hasNext()) {
+                    Map.Entry entry = (Map.Entry) i.next();
+                    Map map = (Map) entry.getValue();
+                    if (map.get("owner").equals(data))
+                        i.remove();
+                }
+                i = events.map.entrySet().iterator();
+                while (i.hasNext()) {
+                    Map.Entry entry = (Map.Entry) i.next();
+                    Map map = (Map) entry.getValue();
+                    if (map.get("owner").equals(data))
+                        i.remove();
+                }
             }
             callByTag("core-events:plugin-unload");
         } );
@@ -372,7 +418,11 @@ public class CommandsProxy{
         }
         BufferedWriter out=new BufferedWriter(writer);
         try {
-            out.write(commandLinks.toJSONArray().toString(2));
+            String json;
+            synchronized (lock) {
+                json = commandLinks.toJSONArray().toString(2);
+            }
+            out.write(json);
             out.flush();
             PluginManager.log("Links successfully saved");
         } catch (Exception e){
@@ -390,7 +440,9 @@ public class CommandsProxy{
             return;
         }
         BufferedReader out=new BufferedReader(reader);
-        commandLinks.clear();
+        synchronized (lock) {
+            commandLinks.clear();
+        }
         try {
             StringBuilder b = new StringBuilder();
             out.lines().forEach(b::append);
@@ -403,7 +455,9 @@ public class CommandsProxy{
             }
             PluginManager.log("Links successfully loaded");
         } catch (Exception e){
-            commandLinks = defaultCommandLinks.clone();
+            synchronized (lock) {
+                commandLinks = defaultCommandLinks.clone();
+            }
             PluginManager.log("Error while loading command links file");
             PluginManager.log(e);
         }
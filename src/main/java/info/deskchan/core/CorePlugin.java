@@ -2,6 +2,7 @@ package info.deskchan.core;
 
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 // This plugin contains
@@ -13,6 +14,14 @@ public class CorePlugin implements Plugin, MessageListener {
 	protected PluginProxyInterface pluginProxy = null;
 	protected final Map<String, List<AlternativeInfo>> alternatives = new HashMap<>();
 
+	// Routing table built from alternatives map. Keys are tags exactly as they come to handleMessage:
+	//   "srcTag"          -> first alternative
+	//   "srcTag#someTag"  -> alternative next to someTag
+	// Table is never changed, it's replaced by new one every time alternatives change.
+	private volatile Map<String, Route> routes = Collections.emptyMap();
+	private final Map<String, LatencyHistogram> chainMetrics = new ConcurrentHashMap<>();
+	private Timer metricsDumpTimer = null;
+
 	@Override
 	public boolean initialize(PluginProxyInterface pluginProxy) {
 		this.pluginProxy = pluginProxy;
@@ -22,6 +31,25 @@ public class CorePlugin implements Plugin, MessageListener {
 		pluginProxy.getProperties().putIfHasNot("locale", Locale.getDefault().getLanguage());
 		Locale.setDefault(new Locale(pluginProxy.getProperties().getString("locale")));
 
+		// Time to wait for responses to messages with response listeners, ms, 0 to wait forever. Timers never expire
+		pluginProxy.getProperties().putIfHasNot("responseTimeout", 600000);
+		PluginProxy.setResponseTimeout(pluginProxy.getProperties().getLong("responseTimeout", 600000));
+		pluginProxy.getProperties().putIfHasNot("requestTimeout", 600000);
+		PluginProxy.setRequestTimeout(pluginProxy.getProperties().getLong("requestTimeout", 600000));
+
+		// Count of threads loading plugins from 'plugins' directory, 1 to load them one by one
+		pluginProxy.getProperties().putIfHasNot("loaderThreads", LoaderManager.getLoaderThreads());
+		LoaderManager.setLoaderThreads(pluginProxy.getProperties().getInteger("loaderThreads", LoaderManager.getLoaderThreads()));
+
+		pluginProxy.getProperties().putIfHasNot("asyncDelivery", false);
+		pluginProxy.getProperties().putIfHasNot("mailboxCapacity", 1000);
+		pluginProxy.getProperties().putIfHasNot("mailboxOverflow", PluginMailbox.Overflow.BLOCK.toString());
+		PluginManager.getInstance().setDeliveryMode(
+				pluginProxy.getProperties().getBoolean("asyncDelivery", false),
+				pluginProxy.getProperties().getInteger("mailboxCapacity", 1000),
+				PluginMailbox.Overflow.parse(pluginProxy.getProperties().getString("mailboxOverflow"))
+		);
+
 		pluginProxy.setResourceBundle("info/deskchan/strings");
         pluginProxy.setConfigField("name", pluginProxy.getString("core-plugin-name"));
 		try {
@@ -136,6 +164,24 @@ public class CorePlugin implements Plugin, MessageListener {
 			pluginProxy.sendMessage(sender, getAlternativesMap());
 		});
 
+		/* Get statistics of routing messages through alternatives.
+		* Public message
+        * Params: None
+        * Returns: Map of Maps, "source" ->
+        *            routed: Long - count of messages passed to next alternative
+        *            delivery: Map - time of passing message to next alternative and handling it there,
+        *                      contains count, mean, p50, p90, p99, max fields in ms */
+		pluginProxy.addMessageListener("core:query-alternatives-metrics", (sender, tag, data) -> {
+			Map<String, Object> m = new HashMap<>();
+			for (Map.Entry<String, LatencyHistogram> entry : chainMetrics.entrySet()) {
+				Map<String, Object> metrics = new HashMap<>();
+				metrics.put("routed", entry.getValue().getCount());
+				metrics.put("delivery", entry.getValue().toMap());
+				m.put(entry.getKey(), metrics);
+			}
+			pluginProxy.sendMessage(sender, m);
+		});
+
 		/* Clearing all dependencies of unloaded plugin.
 		 * Technical message
 		 * Params: name: String - name of plugin
@@ -162,10 +208,12 @@ public class CorePlugin implements Plugin, MessageListener {
 					if (l.isEmpty()) {
 						String srcTag = entry.getKey();
 						pluginProxy.removeMessageListener(srcTag, this);
+						pluginProxy.removeMessageListener(srcTag+"#", this);
 						pluginProxy.log("No more alternatives for " + srcTag);
 						mapIterator.remove();
 					}
 				}
+				rebuildRoutes();
 			}
 		});
 
@@ -225,6 +273,42 @@ public class CorePlugin implements Plugin, MessageListener {
 			PluginManager.getInstance().saveProperties();
 		});
 
+		/* Get message bus statistics.
+		 * Public message
+		 * Params: None
+		 * Returns: Map
+		 *            uptime: Long - time statistics are collected, ms
+		 *            tags: Map "tag" -> (sent: Long, rate: Double - messages per second, errors: Long, latency: Map)
+		 *            listeners: List of Maps (tag: String, plugin: String, listener: String, errors: Long, latency: Map),
+		 *                       descending by total handling time
+		 *          Latency map contains count, mean, p50, p90, p99 and max fields, time in ms  */
+		pluginProxy.addMessageListener("core:query-bus-metrics", (sender, tag, data) -> {
+			pluginProxy.sendMessage(sender, PluginManager.getInstance().getBusMetrics());
+		});
+
+		/* Get startup timeline of plugins loaded from 'plugins' directory.
+		 * Public message
+		 * Params: None
+		 * Returns: Map
+		 *            total: Long - time of loading all plugins, ms
+		 *            plugins: List of Maps (id: String, thread: String, start: Long, wait: Long, duration: Long, loaded: Boolean),
+		 *                     one map for every attempt to load plugin, time in ms  */
+		pluginProxy.addMessageListener("core:query-startup-timeline", (sender, tag, data) -> {
+			pluginProxy.sendMessage(sender, LoaderManager.getStartupTimeline());
+		});
+
+		// Bus statistics are periodically saved to 'data/core/bus-metrics.json', 0 to save them only on exit
+		pluginProxy.getProperties().putIfHasNot("busMetricsDumpPeriod", 300000);
+		long dumpPeriod = pluginProxy.getProperties().getLong("busMetricsDumpPeriod", 300000);
+		if (dumpPeriod > 0) {
+			metricsDumpTimer = new Timer("bus-metrics-dump", true);
+			metricsDumpTimer.schedule(new TimerTask() {
+				@Override public void run() {
+					PluginManager.getInstance().dumpBusMetrics();
+				}
+			}, dumpPeriod, dumpPeriod);
+		}
+
 		pluginProxy.sendMessage("core:register-alternatives", Arrays.asList(
 				new HashMap<String, Object>() {{
 					put("srcTag", "DeskChan:voice-recognition");
@@ -271,7 +355,7 @@ public class CorePlugin implements Plugin, MessageListener {
 		return true;
 	}
 
-	private void registerAlternative(String srcTag, String dstTag, String plugin, Object priority) {
+	private synchronized void registerAlternative(String srcTag, String dstTag, String plugin, Object priority) {
 		int _priority;
 		if (priority instanceof Number)
 			_priority = ((Number) priority).intValue();
@@ -309,10 +393,11 @@ public class CorePlugin implements Plugin, MessageListener {
 			}
 		});
 
+		rebuildRoutes();
 		pluginProxy.log("Registered alternative " + dstTag + " for tag " + srcTag + " with priority: " + priority + ", by plugin " + plugin);
 	}
 	
-	private void unregisterAlternative(String srcTag, String dstTag, String plugin) {
+	private synchronized void unregisterAlternative(String srcTag, String dstTag, String plugin) {
 		List<AlternativeInfo> list = alternatives.get(srcTag);
 		if (list == null)
 			return;
@@ -333,9 +418,31 @@ public class CorePlugin implements Plugin, MessageListener {
 			pluginProxy.removeMessageListener(srcTag+"#", this);
 			pluginProxy.log("No more alternatives for " + srcTag);
 		}
+		rebuildRoutes();
 	}
 
-	private Map<String, Object> getAlternativesMap() {
+	/** Build new routing table from alternatives map. Must be called under lock every time alternatives change.
+	 * Alternatives are unique by destination tag and plugin, so several plugins can register the same destination
+	 * tag for one source. All of them are kept, and message sent by such tag goes to alternative that follows
+	 * its first occurrence, as it was before routes were precomputed. Next occurrence that directly follows
+	 * the same tag is skipped, otherwise alternative would pass messages to itself. **/
+	private void rebuildRoutes() {
+		Map<String, Route> newRoutes = new HashMap<>();
+		for (Map.Entry<String, List<AlternativeInfo>> entry : alternatives.entrySet()) {
+			String srcTag = entry.getKey();
+			LatencyHistogram delivery = chainMetrics.computeIfAbsent(srcTag, k -> new LatencyHistogram());
+			String previous = srcTag, previousTag = null;
+			for (AlternativeInfo info : entry.getValue()) {
+				if (info.tag.equals(previousTag)) continue;
+				newRoutes.putIfAbsent(previous, new Route(info.tag, delivery));
+				previous = srcTag + "#" + info.tag;
+				previousTag = info.tag;
+			}
+		}
+		routes = newRoutes;
+	}
+
+	private synchronized Map<String, Object> getAlternativesMap() {
 		Map<String, Object> m = new HashMap<>();
 		for (Map.Entry<String, List<AlternativeInfo>> entry : alternatives.entrySet()) {
 			List<Map<String, Object>> l = new ArrayList<>();
@@ -353,34 +460,20 @@ public class CorePlugin implements Plugin, MessageListener {
 
 	@Override
 	public void handleMessage(String sender, String tag, Object data) {
-		int delimiter = tag.indexOf("#");
-		String senderTag = null;
-		if (delimiter > 0) {
-			senderTag = tag.substring(delimiter + 1);
-			tag = tag.substring(0, delimiter);
-		}
-
-		List<AlternativeInfo> list = alternatives.get(tag);
-		if (list == null || list.isEmpty())
+		Route route = routes.get(tag);
+		if (route == null)
 			return;
 
-		Iterator<AlternativeInfo> iterator = list.iterator();
-		if (senderTag != null){
-			do {
-				if (!iterator.hasNext()) return;
-				AlternativeInfo nextInfo = iterator.next();
-				if (nextInfo.tag.equals(senderTag)) break;
-			} while (true);
-		}
-
-		try {
-			AlternativeInfo info = iterator.next();
-			PluginManager.getInstance().sendMessage(sender, info.tag, data);
-		} catch (NoSuchElementException e) { }
+		long start = System.nanoTime();
+		PluginManager.getInstance().sendMessage(sender, route.dstTag, data);
+		route.delivery.record(System.nanoTime() - start);
 	}
 
 	@Override
 	public void unload(){
+		if (metricsDumpTimer != null)
+			metricsDumpTimer.cancel();
+		PluginManager.getInstance().dumpBusMetrics();
 		pluginProxy.getProperties().save();
 	}
 
@@ -404,4 +497,14 @@ public class CorePlugin implements Plugin, MessageListener {
 			return tag + "(" + plugin + ")" + "=" + priority;
 		}
 	}
+
+	private static class Route {
+		final String dstTag;
+		final LatencyHistogram delivery;
+
+		Route(String dstTag, LatencyHistogram delivery) {
+			this.dstTag = dstTag;
+			this.delivery = delivery;
+		}
+	}
 }
@@ -1,32 +1,133 @@
 package info.deskchan.core;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class Debug {
-    /** Track time of function work. Prints current stack trace if work time above 10 seconds. **/
+
+    /** Work time of function after which it is considered to be stalled, ms. **/
+    static final long STALL_TIMEOUT = 10000;
+
+    /** How often watchdog checks running functions, ms. **/
+    private static final long WATCHDOG_PERIOD = 1000;
+
+    /** Track time of function work. Prints current stack trace if work time above 10 seconds.
+     * Stalls are detected by one shared watchdog thread, see {@link #beginTracking(String)}. **/
     public static abstract class TimeTest{
-        private Thread thread;
-        private class TestTask extends TimerTask {
-            @Override
-            public void run() {
-                PluginManager.log("Function is running too long, maybe it's an error");
-                StackTraceElement[] traceback = thread.getStackTrace();
-                for(StackTraceElement element : traceback)
-                    PluginManager.log(element.toString());
+        TimeTest(String name){
+            long start = beginTracking(name);
+            try {
+                run();
+            } finally {
+                endTracking(name, start);
             }
         }
-        TimeTest(){
-            Timer timer = new Timer();
-            TimerTask task = new TestTask();
-            thread = Thread.currentThread();
-            timer.schedule(task, 10000);
-            run();
-            timer.cancel();
-        }
         abstract void run();
     }
 
+    /* Stall watchdog */
+
+    // All threads that ever called tracked functions. Every thread changes only its own track, watchdog only reads them,
+    // so tracking costs no locks and no new threads.
+    private static final List<ThreadTrack> tracks = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<ThreadTrack> currentTrack = ThreadLocal.withInitial(() -> {
+        ThreadTrack track = new ThreadTrack(Thread.currentThread());
+        tracks.add(track);
+        startWatchdog();
+        return track;
+    });
+    private static Thread watchdog = null;
+
+    /** Mark that function with name <b>name</b> is started on current thread.
+     * @return Start time that should be passed to {@link #endTracking(String, long)} **/
+    static long beginTracking(String name){
+        return currentTrack.get().begin(name);
+    }
+
+    /** Mark that function with name <b>name</b> started at <b>start</b> is completed on current thread.
+     * @return Work time of function, ns **/
+    static long endTracking(String name, long start){
+        long elapsed = System.nanoTime() - start;
+        if (currentTrack.get().end())
+            PluginManager.log("Function \"" + name + "\" completed after " + elapsed / 1000000 + " ms");
+        return elapsed;
+    }
+
+    private static synchronized void startWatchdog(){
+        if (watchdog != null) return;
+
+        watchdog = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(WATCHDOG_PERIOD);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long now = System.nanoTime();
+                for (ThreadTrack track : tracks) {
+                    if (!track.thread.isAlive()) {
+                        tracks.remove(track);
+                        continue;
+                    }
+                    track.check(now);
+                }
+            }
+        }, "deskchan-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    private static class ThreadTrack {
+        final Thread thread;
+
+        // Written only by owner thread
+        private int depth = 0;
+
+        // Read by watchdog
+        private volatile String outerName;
+        private volatile long outerStart;
+        private volatile boolean running = false;
+        private volatile boolean reported = false;
+
+        ThreadTrack(Thread thread){
+            this.thread = thread;
+        }
+
+        long begin(String name){
+            long start = System.nanoTime();
+            if (depth == 0) {
+                outerName = name;
+                outerStart = start;
+                reported = false;
+                running = true;
+            }
+            depth++;
+            return start;
+        }
+
+        /** @return Was this function reported as stalled **/
+        boolean end(){
+            depth--;
+            if (depth == 0) {
+                running = false;
+                return reported;
+            }
+            return false;
+        }
+
+        void check(long now){
+            if (!running || reported) return;
+            long start = outerStart;
+            if ((now - start) / 1000000 < STALL_TIMEOUT) return;
+
+            reported = true;
+            PluginManager.log("Function \"" + outerName + "\" is running too long on thread "
+                    + thread.getName() + ", maybe it's an error");
+            for (StackTraceElement element : thread.getStackTrace())
+                PluginManager.log(element.toString());
+        }
+    }
+
     /** Print current traceback to console. **/
     public static void printTraceBack(){
         StackTraceElement[] traceback = Thread.currentThread().getStackTrace();
@@ -0,0 +1,105 @@
+package info.deskchan.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Histogram of time values with log-linear buckets, like HdrHistogram does.
+ * Every power of two is divided to 8 linear sub-buckets, so relative error of any percentile is below 12.5%.
+ * Recording doesn't lock and doesn't allocate memory, so it can be called from any thread on hot path. **/
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/** Values are stored in microseconds, values above 2^38 mcs (~3 days) are stored as max value. **/
+	private static final int MAX_EXPONENT = 38;
+	private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+	private static final int BUCKETS_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS_COUNT);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/** Record time value.
+	 * @param nanos Time in nanoseconds **/
+	public void record(long nanos) {
+		long value = Math.min(Math.max(nanos / 1000, 0), MAX_VALUE);
+		counts.incrementAndGet(bucketIndex(value));
+		count.increment();
+		total.add(value);
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value));
+	}
+
+	/** Get count of recorded values. **/
+	public long getCount() {
+		return count.sum();
+	}
+
+	/** Get mean value in milliseconds. **/
+	public double getMean() {
+		long n = count.sum();
+		return n > 0 ? total.sum() / 1000.0 / n : 0;
+	}
+
+	/** Get sum of all values in milliseconds. **/
+	public double getTotal() {
+		return total.sum() / 1000.0;
+	}
+
+	/** Get max value in milliseconds. **/
+	public double getMax() {
+		return max.get() / 1000.0;
+	}
+
+	/** Get value at percentile in milliseconds.
+	 * @param percentile Percentile, from 0 to 100 **/
+	public double getPercentile(double percentile) {
+		long n = 0;
+		for (int i = 0; i < BUCKETS_COUNT; i++)
+			n += counts.get(i);
+		if (n == 0) return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(n * percentile / 100));
+		long passed = 0;
+		for (int i = 0; i < BUCKETS_COUNT; i++) {
+			passed += counts.get(i);
+			if (passed >= rank)
+				return Math.min(bucketHighest(i), max.get()) / 1000.0;
+		}
+		return getMax();
+	}
+
+	/** Get summary of histogram: count, mean, p50, p90, p99, max. Time in milliseconds. **/
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new HashMap<>();
+		map.put("count", getCount());
+		map.put("mean", getMean());
+		map.put("p50", getPercentile(50));
+		map.put("p90", getPercentile(90));
+		map.put("p99", getPercentile(99));
+		map.put("max", getMax());
+		return map;
+	}
+
+	private static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long bucketHighest(int index) {
+		if (index < SUB_BUCKETS)
+			return index;
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int subBucket = index % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return ((SUB_BUCKETS + subBucket) * width) + width - 1;
+	}
+}
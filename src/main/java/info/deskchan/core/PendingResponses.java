@@ -0,0 +1,133 @@
+package info.deskchan.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** Table of requests waiting for responses, keyed by sequence number of request.
+ * Keys are stored as primitive ints in open addressing table, so neither lookup nor insertion boxes them.
+ * Every entry has deadline, after which it can be removed by {@link #removeExpired(long)}. **/
+class PendingResponses<T> {
+
+	/** Deadline of entry that never expires. **/
+	static final long NEVER = Long.MAX_VALUE;
+
+	// 0 marks empty cell, so 0 cannot be used as key
+	private int[] keys;
+	private Object[] values;
+	private long[] deadlines;
+	private int size = 0;
+	private int mask;
+
+	PendingResponses() {
+		allocate(16);
+	}
+
+	/** Put value by key. Keys must be positive. **/
+	synchronized void put(int key, T value, long deadline) {
+		if (key <= 0)
+			throw new IllegalArgumentException("Key must be positive: " + key);
+
+		if ((size + 1) * 2 > keys.length)
+			resize(keys.length * 2);
+
+		int i = indexOf(key);
+		if (keys[i] == 0) size++;
+		keys[i] = key;
+		values[i] = value;
+		deadlines[i] = deadline;
+	}
+
+	/** Get value by key or null if there is no such key. **/
+	@SuppressWarnings("unchecked")
+	synchronized T get(int key) {
+		int i = indexOf(key);
+		return keys[i] == key ? (T) values[i] : null;
+	}
+
+	/** Remove value by key.
+	 * @return Removed value or null if there was no such key **/
+	@SuppressWarnings("unchecked")
+	synchronized T remove(int key) {
+		int i = indexOf(key);
+		if (keys[i] != key) return null;
+
+		T value = (T) values[i];
+		delete(i);
+		return value;
+	}
+
+	/** Remove all entries with deadline before <b>now</b>.
+	 * @return Removed values **/
+	@SuppressWarnings("unchecked")
+	synchronized List<T> removeExpired(long now) {
+		List<T> expired = null;
+		int i = 0;
+		while (i < keys.length) {
+			if (keys[i] != 0 && deadlines[i] <= now) {
+				if (expired == null) expired = new ArrayList<>();
+				expired.add((T) values[i]);
+				// Deletion moves next entries back, so current cell must be checked again
+				delete(i);
+			} else {
+				i++;
+			}
+		}
+		return expired != null ? expired : Collections.emptyList();
+	}
+
+	synchronized int size() {
+		return size;
+	}
+
+	private int indexOf(int key) {
+		int i = hash(key);
+		while (keys[i] != 0 && keys[i] != key)
+			i = (i + 1) & mask;
+		return i;
+	}
+
+	private int hash(int key) {
+		return (key * 0x9E3779B9) & mask;
+	}
+
+	// Backward shift deletion: entries after removed one are moved to keep probe chains without gaps
+	private void delete(int i) {
+		int next = (i + 1) & mask;
+		while (keys[next] != 0) {
+			int home = hash(keys[next]);
+			// Entry can be moved to i if i lies between its home cell and its current cell (cyclically)
+			if (((next - home) & mask) >= ((next - i) & mask)) {
+				keys[i] = keys[next];
+				values[i] = values[next];
+				deadlines[i] = deadlines[next];
+				i = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[i] = 0;
+		values[i] = null;
+		size--;
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new Object[capacity];
+		deadlines = new long[capacity];
+		mask = capacity - 1;
+	}
+
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		long[] oldDeadlines = deadlines;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == 0) continue;
+			int j = indexOf(oldKeys[i]);
+			keys[j] = oldKeys[i];
+			values[j] = oldValues[i];
+			deadlines[j] = oldDeadlines[i];
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package info.deskchan.core;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Bounded queue of messages waiting to be delivered to listeners of one plugin.
+ * Used by message bus in asynchronous delivery mode. Messages of one plugin are handled one by one
+ * in the order they were sent, but different plugins handle their messages in parallel. **/
+class PluginMailbox implements Runnable {
+
+	/** What to do with new message if mailbox is full. **/
+	enum Overflow {
+		/** Sender waits until there will be free space in mailbox. If it waits too long, message is rejected. **/
+		BLOCK,
+		/** The oldest message in mailbox will be dropped. **/
+		DROP_OLDEST,
+		/** New message will be dropped, sender gets core-events:error. **/
+		REJECT;
+
+		static Overflow parse(Object value) {
+			try {
+				return valueOf(value.toString().toUpperCase(Locale.ENGLISH).replace('-', '_'));
+			} catch (Exception e) {
+				return BLOCK;
+			}
+		}
+	}
+
+	/** Max messages delivered by one drain pass, after that mailbox gives its thread to other plugins. **/
+	private static final int DRAIN_BATCH = 64;
+
+	/** Max time sender can wait for free space in mailbox, ms. Two plugins filling mailboxes of each other won't hang forever. **/
+	private static final long BLOCK_TIMEOUT = 5000;
+
+	private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger counter = new AtomicInteger();
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "deskchan-mailbox-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final String id;
+	private final ArrayDeque<Envelope> queue = new ArrayDeque<>();
+	private boolean scheduled = false;
+	private boolean closed = false;
+	private Thread drainThread = null;
+
+	PluginMailbox(String id) {
+		this.id = id;
+	}
+
+	/** Put message to mailbox. Depending on overflow policy this method can block the sender if mailbox is full. **/
+	void post(String sender, String tag, Object data, PluginManager.Subscriber subscriber, int capacity, Overflow overflow) {
+		Envelope envelope = new Envelope(sender, tag, data, subscriber);
+		Envelope dropped = null;
+		synchronized (this) {
+			if (closed) return;
+
+			// Drain thread must not wait for itself, so plugin sending messages to itself never hangs
+			if (queue.size() >= capacity && Thread.currentThread() != drainThread) {
+				switch (overflow) {
+					case BLOCK:
+						try {
+							long deadline = System.currentTimeMillis() + BLOCK_TIMEOUT;
+							long left;
+							while (queue.size() >= capacity && !closed && (left = deadline - System.currentTimeMillis()) > 0)
+								wait(left);
+							if (queue.size() >= capacity)
+								dropped = envelope;
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							dropped = envelope;
+						}
+						if (closed) return;
+						break;
+					case DROP_OLDEST:
+						dropped = queue.poll();
+						break;
+					case REJECT:
+						dropped = envelope;
+						break;
+				}
+			}
+
+			if (dropped != envelope) {
+				queue.add(envelope);
+				if (!scheduled) {
+					scheduled = true;
+					executor.execute(this);
+				}
+			}
+		}
+		if (dropped != null)
+			reportDropped(dropped);
+	}
+
+	/** Get id of plugin owning this mailbox. **/
+	String getId() {
+		return id;
+	}
+
+	/** Get count of messages waiting in mailbox. **/
+	synchronized int size() {
+		return queue.size();
+	}
+
+	/** Drop all waiting messages and stop accepting new ones. **/
+	synchronized void close() {
+		closed = true;
+		queue.clear();
+		notifyAll();
+	}
+
+	@Override
+	public void run() {
+		synchronized (this) {
+			drainThread = Thread.currentThread();
+		}
+		for (int i = 0; i < DRAIN_BATCH; i++) {
+			Envelope envelope;
+			synchronized (this) {
+				envelope = queue.poll();
+				if (envelope == null) {
+					scheduled = false;
+					drainThread = null;
+					return;
+				}
+				notifyAll();
+			}
+			PluginManager.getInstance().deliverMessage(envelope.subscriber, envelope.sender, envelope.tag, envelope.data);
+		}
+		synchronized (this) {
+			drainThread = null;
+			executor.execute(this);
+		}
+	}
+
+	private void reportDropped(Envelope envelope) {
+		String message = "Message " + envelope.tag + " from " + envelope.sender + " was dropped: mailbox of " + id + " is full";
+		// Prevents endless loop if error handler's mailbox is full too
+		if (envelope.tag.equals("core-events:error"))
+			PluginManager.log(envelope.sender, message, LoggerLevel.ERROR);
+		else
+			PluginManager.log(envelope.sender, new Exception(message));
+	}
+
+	private static class Envelope {
+		final String sender;
+		final String tag;
+		final Object data;
+		final PluginManager.Subscriber subscriber;
+
+		Envelope(String sender, String tag, Object data, PluginManager.Subscriber subscriber) {
+			this.sender = sender;
+			this.tag = tag;
+			this.data = data;
+			this.subscriber = subscriber;
+		}
+	}
+}
@@ -9,12 +9,17 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 
 public class PluginManager {
 
 	private static final PluginManager instance = new PluginManager();
 
-	private final Map<String, PluginProxy> plugins = new HashMap<>();
+	// Plugins are loaded from several threads by LoaderManager, so all collections below are thread-safe
+	private final Map<String, PluginProxy> plugins = new ConcurrentHashMap<>();
+	private final Set<String> initializingPlugins = ConcurrentHashMap.newKeySet();
 
 	// This map contain keys of two types:
 	//  - some:tag  - just common messages
@@ -22,21 +27,35 @@ public class PluginManager {
 	// This separation was added in order to prevent getting common and special messages duplicating each other
 	// when you're subscribing to any message
 	// To remove such separation, you need to change this files inside core: PluginManager, CorePlugin, PluginProxy
-	private final Map<String, Set<MessageListener>> messageListeners = new HashMap<>();
-	private final List<PluginLoader> loaders = new ArrayList<>();
-	private final Set<String> blacklistedPlugins = new HashSet<>();
+	//
+	// Listener arrays are never modified in place: registration replaces the whole array, so sendMessage
+	// can iterate a snapshot without any locking while other threads subscribe and unsubscribe.
+	private final Map<String, Subscriber[]> messageListeners = new ConcurrentHashMap<>();
+	private final BusMetrics metrics = new BusMetrics();
+	private final List<PluginLoader> loaders = new CopyOnWriteArrayList<>();
+	private final Set<String> blacklistedPlugins = ConcurrentHashMap.newKeySet();
 	private String[] args;
 	private static OutputStream logStream = null;
 
+	// Asynchronous delivery mode: messages are put to mailboxes of receiving plugins instead of calling
+	// listeners on the sender's thread
+	private volatile boolean asyncDelivery = false;
+	private volatile int mailboxCapacity = 1000;
+	private volatile PluginMailbox.Overflow mailboxOverflow = PluginMailbox.Overflow.BLOCK;
+
 	private static boolean debugBuild = false;
     private static String[] debugBuildFolders = { "build", "out" };
 
-	Set<MessageListener> getMessageListeners(String key){
-		int delimiterPas = key.indexOf('#');
+	Subscriber[] getMessageListeners(String key){
+		return messageListeners.get(getListenersKey(key));
+	}
+
+	static String getListenersKey(String tag){
+		int delimiterPas = tag.indexOf('#');
 		if (delimiterPas >= 0)
-			key = key.substring(0, delimiterPas + 1);
+			tag = tag.substring(0, delimiterPas + 1);
 
-		return messageListeners.get(key);
+		return tag;
 	}
 
 	/* Paths cache */
@@ -106,14 +125,19 @@ public class PluginManager {
 	 * @throws Throwable Plugin with such name already exist
 	 */
 	public boolean initializePlugin(String id, Plugin plugin, PluginConfig config) throws Throwable {
-		if (plugins.containsKey(id)) {
-			throw new Throwable("Cannot load plugin " + id + ": plugin with such name already exist");
-		}
 		if (blacklistedPlugins.contains(id)) {
 			return false;
 		}
-		if (!plugins.containsKey(id)) {
-			new Debug.TimeTest(){
+		// Plugin with the same id can be initializing on other thread right now. Id is reserved before checking
+		// loaded plugins and released only after plugin is put to them, so two threads can't both pass the checks
+		if (!initializingPlugins.add(id)) {
+			throw new Throwable("Cannot load plugin " + id + ": plugin with such name is loading");
+		}
+		try {
+			if (plugins.containsKey(id)) {
+				throw new Throwable("Cannot load plugin " + id + ": plugin with such name already exist");
+			}
+			new Debug.TimeTest("initialization of " + id){
 				@Override
 				void run(){
 					try {
@@ -132,9 +156,10 @@ public class PluginManager {
 					}
 				}
 			};
-			return true;
+		} finally {
+			initializingPlugins.remove(id);
 		}
-		return false;
+		return true;
 	}
 
 	/** Plugin initialization. Plugin will be marked as inner plugin with default configuration. <br>
@@ -172,37 +197,54 @@ public class PluginManager {
 
 	/**  Register tag listener. All messages that sending to <b>tag</b> will be automatically sent to <b>listener.handle</b>.  **/
 	void registerMessageListener(String tag, MessageListener listener) {
-		Set<MessageListener> listeners = messageListeners.get(tag);
-		if (listeners == null) {
-			listeners = new HashSet<>();
-			messageListeners.put(tag, listeners);
-		}
+		registerMessageListener(tag, listener, null);
+	}
+
+	/**  Register tag listener that belongs to plugin.
+	 * In asynchronous delivery mode messages to this listener will be put to <b>mailbox</b>.  **/
+	void registerMessageListener(String tag, MessageListener listener, PluginMailbox mailbox) {
 		if (tag.equals("core-events:plugin-load")) {
 			for (String id : plugins.keySet()) {
 				listener.handleMessage("core", "core-events:plugin-load", id);
 			}
 		}
-		listeners.add(listener);
+		messageListeners.compute(tag, (key, listeners) -> {
+			if (listeners == null)
+				return new Subscriber[]{ new Subscriber(key, listener, mailbox) };
+
+			for (Subscriber registered : listeners) {
+				if (registered.listener.equals(listener))
+					return listeners;
+			}
+			Subscriber[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+			newListeners[listeners.length] = new Subscriber(key, listener, mailbox);
+			return newListeners;
+		});
 	}
 
 	/**  Unregister tag listener. **/
 	void unregisterMessageListener(String tag, MessageListener listener) {
-		Set<MessageListener> listeners = messageListeners.get(tag);
-		if (listeners != null) {
-			listeners.remove(listener);
-			if (listeners.size() == 0) {
-				messageListeners.remove(tag);
+		messageListeners.computeIfPresent(tag, (key, listeners) -> {
+			for (int i = 0; i < listeners.length; i++) {
+				if (!listeners[i].listener.equals(listener))
+					continue;
+
+				if (listeners.length == 1)
+					return null;
+
+				Subscriber[] newListeners = new Subscriber[listeners.length - 1];
+				System.arraycopy(listeners, 0, newListeners, 0, i);
+				System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+				return newListeners;
 			}
-		}
+			return listeners;
+		});
 	}
 
 	/**  Get listeners count. **/
 	int getMessageListenersCount(String tag) {
-		Set<MessageListener> listeners = messageListeners.get(tag);
-		if (listeners != null) {
-			return listeners.size();
-		}
-		return 0;
+		Subscriber[] listeners = messageListeners.get(tag);
+		return listeners != null ? listeners.length : 0;
 	}
 
 	/**
@@ -213,24 +255,80 @@ public class PluginManager {
 	 * @param data Additional data that will be sent with query, can be null
 	 */
 	void sendMessage(String sender, String tag, Object data) {
-		Set<MessageListener> listeners = getMessageListeners(tag);
-		if (listeners == null || listeners.size() == 0)
+		String key = getListenersKey(tag);
+		Subscriber[] listeners = messageListeners.get(key);
+		if (listeners == null)
 			return;
 
-		synchronized (listeners) {
-			for (MessageListener listener : listeners) {
-				Debug.TimeTest send = new Debug.TimeTest() {
-					@Override
-					void run() {
-						try {
-							listener.handleMessage(sender, tag, data);
-						} catch (Throwable e) {
-							if (!tag.equals("core-events:error"))
-								log(sender, new Exception("Error while calling " + tag + ", called by " + sender, e));
-						}
-					}
-				};
-			}
+		// Only tags with subscribers are counted, so tags nobody listens to don't grow metrics
+		listeners[0].tagMetrics.sent.increment();
+
+		for (Subscriber subscriber : listeners) {
+			if (asyncDelivery && subscriber.mailbox != null)
+				subscriber.mailbox.post(sender, tag, data, subscriber, mailboxCapacity, mailboxOverflow);
+			else
+				deliverMessage(subscriber, sender, tag, data);
+		}
+	}
+
+	/** Call listener with message. Errors thrown by listener are logged and not passed to sender. **/
+	void deliverMessage(Subscriber subscriber, String sender, String tag, Object data) {
+		long start = Debug.beginTracking(tag);
+		try {
+			subscriber.listener.handleMessage(sender, tag, data);
+		} catch (Throwable e) {
+			subscriber.errors.increment();
+			subscriber.tagMetrics.errors.increment();
+			if (!tag.equals("core-events:error"))
+				log(sender, new Exception("Error while calling " + tag + ", called by " + sender, e));
+		} finally {
+			long elapsed = Debug.endTracking(tag, start);
+			subscriber.latency.record(elapsed);
+			subscriber.tagMetrics.latency.record(elapsed);
+		}
+	}
+
+	/** Get message bus statistics.
+	 * @see BusMetrics#toMap(Map) **/
+	Map<String, Object> getBusMetrics() {
+		return metrics.toMap(messageListeners);
+	}
+
+	/** Write message bus statistics to 'data/core/bus-metrics.json'. **/
+	void dumpBusMetrics() {
+		metrics.dump(getPluginDataDirPath("core").resolve("bus-metrics.json"), messageListeners);
+	}
+
+	/** Set message delivery mode.
+	 * @param async If true, sendMessage returns immediately and listeners of every plugin are called
+	 *              in order on separate thread, otherwise listeners are called on sender's thread
+	 * @param capacity Max count of messages waiting in one plugin's mailbox
+	 * @param overflow What to do with message if mailbox is full
+	 */
+	void setDeliveryMode(boolean async, int capacity, PluginMailbox.Overflow overflow) {
+		mailboxCapacity = Math.max(capacity, 1);
+		mailboxOverflow = overflow;
+		asyncDelivery = async;
+		log("Message delivery mode: " + (async ? "async, mailbox capacity " + mailboxCapacity + ", on overflow " + overflow : "sync"));
+	}
+
+	class Subscriber {
+		final String tag;
+		final MessageListener listener;
+		final PluginMailbox mailbox;
+		final BusMetrics.TagMetrics tagMetrics;
+		final LatencyHistogram latency = new LatencyHistogram();
+		final LongAdder errors = new LongAdder();
+
+		Subscriber(String tag, MessageListener listener, PluginMailbox mailbox) {
+			this.tag = tag;
+			this.listener = listener;
+			this.mailbox = mailbox;
+			this.tagMetrics = metrics.getTagMetrics(tag);
+		}
+
+		String getPluginId() {
+			return mailbox != null ? mailbox.getId() : "unknown";
 		}
 	}
 
@@ -344,10 +442,11 @@ public class PluginManager {
 	}
 
 	/** Load plugin by path. Program searches appropriate loader for file and gives it to loader.
+	 * Can be called from several threads at once, loaders must be ready for it.
 	 * @param path Path to plugin file
 	 * @throws Throwable If could not match loader for plugin
 	 */
-	public synchronized boolean loadPluginByPath(Path path) throws Throwable {
+	public boolean loadPluginByPath(Path path) throws Throwable {
 		for (PluginLoader loader : loaders) {
 			if (loader.matchPath(path)) {
 				loader.loadByPath(path);
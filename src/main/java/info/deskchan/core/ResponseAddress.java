@@ -0,0 +1,34 @@
+package info.deskchan.core;
+
+/** Address that receivers of request use to send their responses. Address looks like "pluginId#seq",
+ * where seq is positive sequence number of request assigned by plugin that sent request.
+ * Receivers use address as tag, so message bus delivers response to "pluginId#" listener. **/
+final class ResponseAddress {
+
+	private ResponseAddress() { }
+
+	/** Make address for request. **/
+	static String format(String id, int seq) {
+		return id + '#' + seq;
+	}
+
+	/** Get sequence number of request from address without creating new strings.
+	 * @param address Tag of response
+	 * @param id Id of plugin that sent request
+	 * @return Sequence number or -1 if address is not response address of plugin with such id **/
+	static int parseSeq(String address, String id) {
+		int length = address.length();
+		int start = id.length() + 1;
+		if (length <= start || length - start > 10 || address.charAt(start - 1) != '#' || !address.startsWith(id))
+			return -1;
+
+		long seq = 0;
+		for (int i = start; i < length; i++) {
+			char c = address.charAt(i);
+			if (c < '0' || c > '9')
+				return -1;
+			seq = seq * 10 + (c - '0');
+		}
+		return seq > 0 && seq <= Integer.MAX_VALUE ? (int) seq : -1;
+	}
+}
@@ -0,0 +1,150 @@
+package info.deskchan.core_utils;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Thread-safe cache that keeps no more than given count of entries, least recently used entries are evicted first.
+ * Entries are spread over several segments with their own locks, so threads using different keys rarely wait
+ * for each other. Every segment evicts on its own in O(1), so limit is kept approximately, per segment.
+ * Cache counts its hits and misses. **/
+public class BoundedCache<K, V> {
+
+    public interface Loader<K, V> {
+        V load(K key) throws Exception;
+    }
+
+    private final Segment<K, V>[] segments;
+    private final int limit;
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder();
+
+    public BoundedCache(int limit){
+        if (limit <= 0) throw new IllegalArgumentException("Cache limit should be positive: " + limit);
+        this.limit = limit;
+
+        // Segments have at least 64 entries each, so small caches don't lose precision of LRU order
+        int count = 1;
+        while (count < 16 && count * 64 <= limit) count *= 2;
+
+        // Generic arrays cannot be created, array is filled with segments of the same types only
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Segment<K, V>[] segments = new Segment[count];
+        for (int i = 0; i < count; i++)
+            segments[i] = new Segment<>((limit + count - 1) / count, evictions);
+        this.segments = segments;
+    }
+
+    private Segment<K, V> segmentFor(Object key){
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (segments.length - 1)];
+    }
+
+    /** Get value by key, or null if cache doesn't have it. **/
+    public V get(K key){
+        Segment<K, V> segment = segmentFor(key);
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        (value != null ? hits : misses).increment();
+        return value;
+    }
+
+    public void put(K key, V value){
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    /** Get value by key, or load it and put to cache if cache doesn't have it.
+     * Value is loaded without lock, so several threads can load the same value at once, and value of first of them is kept. **/
+    public V get(K key, Loader<? super K, ? extends V> loader) throws Exception {
+        Segment<K, V> segment = segmentFor(key);
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+
+        misses.increment();
+        V loaded = loader.load(key);
+        if (loaded == null) return null;
+        synchronized (segment) {
+            value = segment.putIfAbsent(key, loaded);
+        }
+        return value != null ? value : loaded;
+    }
+
+    public void remove(K key){
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    public void clear(){
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size(){
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public int getLimit(){
+        return limit;
+    }
+
+    /** Part of requests that found value in cache, from 0 to 1. **/
+    public float getHitRate(){
+        long h = hits.sum(), total = h + misses.sum();
+        return total > 0 ? (float) h / total : 0;
+    }
+
+    /** Get statistics of cache as map with keys: size, limit, hits, misses, evictions, hitRate. **/
+    public Map<String, Object> getStats(){
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("size", size());
+        stats.put("limit", limit);
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("hitRate", getHitRate());
+        return stats;
+    }
+
+    private static class Segment<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int limit;
+        private final LongAdder evictions;
+
+        Segment(int limit, LongAdder evictions){
+            super(16, 0.75f, true);
+            this.limit = limit;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest){
+            if (size() <= limit) return false;
+            evictions.increment();
+            return true;
+        }
+    }
+}
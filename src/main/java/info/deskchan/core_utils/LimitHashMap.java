@@ -1,34 +1,154 @@
 package info.deskchan.core_utils;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/** Map that keeps no more than given count of entries, the earliest added entries are removed first.
+ * Entries are kept in insertion order by LinkedHashMap, so removing the eldest one takes O(1).
+ * Map wraps {@link Collections#synchronizedMap}, so every method and view is thread-safe,
+ * but iterators of views are not; use {@link #forEach} to go over entries under lock.
+ * For frequently used caches prefer {@link BoundedCache}, which doesn't block all threads on every access. **/
+public class LimitHashMap<K,V> implements Map<K,V> {
+    private final Map<K,V> map;
 
-public class LimitHashMap<K,V> extends HashMap<K,V> {
-    private List<K> orderedKeySet = new ArrayList<>();
-    private int limit;
     public LimitHashMap(int maxCapacity){
-        super();
-        limit = maxCapacity;
+        map = Collections.synchronizedMap(new LinkedHashMap<K,V>(){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K,V> eldest){
+                return size() > maxCapacity;
+            }
+        });
     }
+
     @Override
     public V put(K key, V value){
-        if (size()>=limit)
-        {
-            K removeKey = orderedKeySet.remove(0);
-            this.remove(removeKey);
-        }
-        if(!containsKey(key)){
-            orderedKeySet.add(key);
-        }
-        return super.put(key, value);
-    }
-
-    @Override
-    public V remove(Object key) {
-        if (orderedKeySet.contains(key)){
-            orderedKeySet.remove(key);
-        }
-        return super.remove(key);
+        return map.put(key, value);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m){
+        map.putAll(m);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value){
+        return map.putIfAbsent(key, value);
+    }
+
+    @Override
+    public V get(Object key){
+        return map.get(key);
+    }
+
+    @Override
+    public V getOrDefault(Object key, V defaultValue){
+        return map.getOrDefault(key, defaultValue);
+    }
+
+    @Override
+    public boolean containsKey(Object key){
+        return map.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value){
+        return map.containsValue(value);
+    }
+
+    @Override
+    public V remove(Object key){
+        return map.remove(key);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value){
+        return map.remove(key, value);
+    }
+
+    @Override
+    public V replace(K key, V value){
+        return map.replace(key, value);
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue){
+        return map.replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function){
+        map.replaceAll(function);
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction){
+        return map.computeIfAbsent(key, mappingFunction);
+    }
+
+    @Override
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction){
+        return map.computeIfPresent(key, remappingFunction);
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction){
+        return map.compute(key, remappingFunction);
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction){
+        return map.merge(key, value, remappingFunction);
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action){
+        map.forEach(action);
+    }
+
+    @Override
+    public int size(){
+        return map.size();
+    }
+
+    @Override
+    public boolean isEmpty(){
+        return map.isEmpty();
+    }
+
+    @Override
+    public void clear(){
+        map.clear();
+    }
+
+    @Override
+    public Set<K> keySet(){
+        return map.keySet();
+    }
+
+    @Override
+    public Collection<V> values(){
+        return map.values();
+    }
+
+    @Override
+    public Set<Map.Entry<K,V>> entrySet(){
+        return map.entrySet();
+    }
+
+    @Override
+    public boolean equals(Object o){
+        return o == this || map.equals(o);
+    }
+
+    @Override
+    public int hashCode(){
+        return map.hashCode();
+    }
+
+    @Override
+    public String toString(){
+        return map.toString();
     }
 }
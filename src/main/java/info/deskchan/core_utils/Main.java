@@ -8,8 +8,7 @@ import java.util.*;
 public class Main implements Plugin {
 
 	private static PluginProxyInterface pluginProxy;
-	private final List<DelayNotifier> timerTasks = new LinkedList<>();
-	private final Timer timer = new Timer();
+	private final TimerWheel timers = new TimerWheel(20, 512, "core-utils-timers");
 
 	@Override
 	public boolean initialize(PluginProxyInterface proxy) {
@@ -17,25 +16,22 @@ public class Main implements Plugin {
 
 		pluginProxy.setConfigField("name", pluginProxy.getString("core-utils-plugin-name"));
 
+		/* Notify plugin after delay.
+		 * Technical message, use "core-utils:notify-after-delay" instead
+		 * Params: delay: Long - delay before notification, ms
+		 *         count: Int? - count of notifications with delay between them, -1 to notify until cancelled, default - 1
+		 *      or
+		 *         cancel: Int - sequence number of message that started timer to cancel
+		 * Returns: None, every notification is sent as response  */
 		pluginProxy.addMessageListener("core-utils:notify-after-delay-default-impl",
 				(sender, tag, data) -> {
 					Map m = (Map) data;
 
 					// canceling timer
-					Integer seq = (Integer) m.get("cancel");
+					Object seq = m.get("cancel");
 					if (seq != null) {
-						synchronized (timerTasks) {
-							String cancelTag = sender + "#" + seq;
-							Iterator<DelayNotifier> iterator = timerTasks.iterator();
-							while (iterator.hasNext()) {
-								DelayNotifier task = iterator.next();
-								if (task.tag.equals(cancelTag)) {
-									task.cancel();
-									iterator.remove();
-								}
-							}
-							return;
-						}
+						timers.cancel(sender + "#" + seq);
+						return;
 					}
 
 					Object delayObj = m.getOrDefault("delay", -1L);
@@ -45,23 +41,18 @@ public class Main implements Plugin {
 					else
 						delay = Long.valueOf(delayObj.toString());
 
+					Object countObj = m.getOrDefault("count", 1);
+					int count = countObj instanceof Number ? ((Number) countObj).intValue() : Integer.parseInt(countObj.toString());
+
 					if (delay > 0) {
-						DelayNotifier task = new DelayNotifier(sender);
-						timer.schedule(task, delay);
+						int delimiter = sender.indexOf('#');
+						String owner = delimiter >= 0 ? sender.substring(0, delimiter) : sender;
+						timers.schedule(owner, sender, delay, delay, count, timeout -> pluginProxy.sendMessage(sender, null));
 					}
 		});
 
 		pluginProxy.addMessageListener("core-events:plugin-unload", (sender, tag, data) -> {
-			synchronized (timerTasks) {
-				Iterator<DelayNotifier> iterator = timerTasks.iterator();
-				while (iterator.hasNext()) {
-					DelayNotifier task = iterator.next();
-					if (task.tag.startsWith(data.toString())) {
-						task.cancel();
-						iterator.remove();
-					}
-				}
-			}
+			timers.cancelAll(data.toString());
 		});
 
 		pluginProxy.addMessageListener("core:distribute-resources", (sender, tag, data) -> {
@@ -102,27 +93,7 @@ public class Main implements Plugin {
 
 	@Override
 	public void unload() {
-		timer.purge();
-	}
-	
-	class DelayNotifier extends TimerTask {
-		
-		private final String tag;
-		
-		DelayNotifier(String tag) {
-			this.tag = tag;
-			synchronized (timerTasks) {
-				timerTasks.add(this);
-			}
-		}
-		
-		@Override
-		public void run() {
-			synchronized (timerTasks) {
-				timerTasks.remove(this);
-			}
-			pluginProxy.sendMessage(tag, null);
-		}
+		timers.stop();
 	}
 
 	static void log(String text) {
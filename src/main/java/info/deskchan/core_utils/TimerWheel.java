@@ -0,0 +1,216 @@
+package info.deskchan.core_utils;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/** Hashed timer wheel.
+ * Time is divided into ticks, and every timer is put into the wheel bucket of the tick it should fire at,
+ * so scheduling and cancelling are O(1). Timers longer than one turn of the wheel stay in their bucket and wait
+ * for the required count of turns. One thread advances the wheel and runs tasks; it sleeps while there are no timers.
+ * Timers are grouped by owner, so all timers of plugin can be cancelled at once. **/
+class TimerWheel {
+
+	/** Scheduled timer. **/
+	static class Timeout {
+		final String owner;
+		final String key;
+		private final Consumer<Timeout> task;
+		private final long periodTicks;
+		private volatile int remaining;
+		private int rounds;
+		private Timeout prev, next;
+		private int bucket = -1;
+
+		private Timeout(String owner, String key, Consumer<Timeout> task, long periodTicks, int remaining) {
+			this.owner = owner;
+			this.key = key;
+			this.task = task;
+			this.periodTicks = periodTicks;
+			this.remaining = remaining;
+		}
+
+		/** Will this timer fire again. When called from task, tells if current run is not the last one. **/
+		boolean isActive() {
+			return remaining != 0;
+		}
+	}
+
+	private final long tickDuration;
+	private final int mask;
+	private final Timeout[] wheel;
+	private final Map<String, Timeout> byKey = new HashMap<>();
+	private final Map<String, Set<Timeout>> byOwner = new HashMap<>();
+	private final Thread worker;
+	private final long startTime = System.nanoTime();
+
+	// Number of the tick that will be processed next
+	private long currentTick = 0;
+	private int size = 0;
+	private boolean running = true;
+
+	/**
+	 * @param tickDuration Duration of one tick, ms
+	 * @param wheelSize Count of buckets, will be rounded up to power of two
+	 * @param threadName Name of worker thread
+	 */
+	TimerWheel(long tickDuration, int wheelSize, String threadName) {
+		this.tickDuration = tickDuration * 1000000;
+		int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+		wheel = new Timeout[size];
+		mask = size - 1;
+		worker = new Thread(this::work, threadName);
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/** Schedule timer.
+	 * @param owner Owner of timer, used by {@link #cancelAll(String)}
+	 * @param key Unique key of timer, used by {@link #cancel(String)}. If timer with such key exists, it will be cancelled
+	 * @param delay Delay before first run, ms
+	 * @param period Delay between runs, ms
+	 * @param count Count of runs, -1 to run until cancelled
+	 * @param task Task that gets its timer as argument. Tasks are called on worker thread, they should be short
+	 * @return Timer handle **/
+	synchronized Timeout schedule(String owner, String key, long delay, long period, int count, Consumer<Timeout> task) {
+		cancel(key);
+		long periodTicks = Math.max(1, (period * 1000000 + tickDuration - 1) / tickDuration);
+		Timeout timeout = new Timeout(owner, key, task, periodTicks, count == 0 ? 1 : count);
+		byKey.put(key, timeout);
+		byOwner.computeIfAbsent(owner, k -> new HashSet<>()).add(timeout);
+
+		if (size == 0) {
+			// Worker was sleeping, so current tick must be brought up to date
+			currentTick = Math.max(currentTick, (System.nanoTime() - startTime) / tickDuration);
+			notifyAll();
+		}
+		long deadline = System.nanoTime() - startTime + delay * 1000000;
+		long tick = Math.max(currentTick, (deadline + tickDuration - 1) / tickDuration - 1);
+		insert(timeout, tick, currentTick);
+		return timeout;
+	}
+
+	/** Cancel timer by key.
+	 * @return Was timer active **/
+	synchronized boolean cancel(String key) {
+		Timeout timeout = byKey.get(key);
+		return timeout != null && cancel(timeout);
+	}
+
+	/** Cancel timer.
+	 * @return Was timer active **/
+	synchronized boolean cancel(Timeout timeout) {
+		if (timeout.remaining == 0) return false;
+
+		timeout.remaining = 0;
+		if (timeout.bucket >= 0)
+			unlink(timeout);
+		forget(timeout);
+		return true;
+	}
+
+	/** Cancel all timers of owner.
+	 * @return Cancelled timers **/
+	synchronized List<Timeout> cancelAll(String owner) {
+		Set<Timeout> timeouts = byOwner.get(owner);
+		if (timeouts == null)
+			return Collections.emptyList();
+
+		List<Timeout> cancelled = new ArrayList<>(timeouts);
+		for (Timeout timeout : cancelled)
+			cancel(timeout);
+		return cancelled;
+	}
+
+	/** Get count of active timers. **/
+	synchronized int size() {
+		return byKey.size();
+	}
+
+	/** Stop worker thread. All timers will be lost. **/
+	synchronized void stop() {
+		running = false;
+		notifyAll();
+	}
+
+	// Timer will be met in its bucket first at tick fromTick or later, every visit before tick decreases rounds
+	private void insert(Timeout timeout, long tick, long fromTick) {
+		int bucket = (int) (tick & mask);
+		timeout.rounds = (int) ((tick - fromTick) / wheel.length);
+		timeout.bucket = bucket;
+		timeout.prev = null;
+		timeout.next = wheel[bucket];
+		if (wheel[bucket] != null)
+			wheel[bucket].prev = timeout;
+		wheel[bucket] = timeout;
+		size++;
+	}
+
+	private void unlink(Timeout timeout) {
+		if (timeout.prev != null)
+			timeout.prev.next = timeout.next;
+		else
+			wheel[timeout.bucket] = timeout.next;
+		if (timeout.next != null)
+			timeout.next.prev = timeout.prev;
+		timeout.prev = timeout.next = null;
+		timeout.bucket = -1;
+		size--;
+	}
+
+	private void forget(Timeout timeout) {
+		byKey.remove(timeout.key, timeout);
+		Set<Timeout> timeouts = byOwner.get(timeout.owner);
+		if (timeouts != null) {
+			timeouts.remove(timeout);
+			if (timeouts.isEmpty())
+				byOwner.remove(timeout.owner);
+		}
+	}
+
+	private void work() {
+		List<Timeout> expired = new ArrayList<>();
+		while (true) {
+			synchronized (this) {
+				try {
+					while (running && size == 0)
+						wait();
+					long wait;
+					while (running && size > 0 &&
+							(wait = startTime + (currentTick + 1) * tickDuration - System.nanoTime()) > 0)
+						wait(wait / 1000000, (int) (wait % 1000000));
+				} catch (InterruptedException e) {
+					return;
+				}
+				if (!running) return;
+				if (size == 0) continue;
+
+				Timeout timeout = wheel[(int) (currentTick & mask)];
+				while (timeout != null) {
+					Timeout next = timeout.next;
+					if (timeout.rounds <= 0) {
+						unlink(timeout);
+						if (timeout.remaining > 0) timeout.remaining--;
+						if (timeout.remaining != 0)
+							insert(timeout, currentTick + timeout.periodTicks, currentTick + 1);
+						else
+							forget(timeout);
+						expired.add(timeout);
+					} else {
+						timeout.rounds--;
+					}
+					timeout = next;
+				}
+				currentTick++;
+			}
+
+			for (Timeout timeout : expired) {
+				try {
+					timeout.task.accept(timeout);
+				} catch (Throwable e) {
+					Main.log(e);
+				}
+			}
+			expired.clear();
+		}
+	}
+}
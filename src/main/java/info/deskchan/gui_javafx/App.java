@@ -34,6 +34,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 public class App extends Application {
@@ -58,8 +59,10 @@ public class App extends Application {
 		instance = this;
 		long start = System.currentTimeMillis();
 
+		ImageCache.getInstance().setLimit(Main.getProperties().getLong("skin.image_cache_size", 256) * 1024 * 1024);
 		character = new info.deskchan.gui_javafx.panes.Character("main", Skin.load(Main.getProperties().getString("skin.name")));
 		Main.log("character initialized, " + getTime(start));
+		preloadSkin(character.getSkin());
 		// Hacking javafx Application class to hide app from programs panel
 		HackJavaFX.process();
 		Main.log("hacked JavaFX, " + getTime(start));
@@ -238,9 +241,39 @@ public class App extends Application {
 				} else {
 					character.setSkin(Skin.load(data.toString()));
 				}
+				preloadSkin(character.getSkin());
 			});
 		});
 
+		/* Get statistics of decoded images cache shared by all skins.
+        * Public message
+        * Params: None
+        * Returns: Map
+        *           size: Long - bytes taken by images, counted as width * height * 4
+        *           limit: Long - limit of bytes, set by skin.image_cache_size property in megabytes
+        *           count: Integer - count of images in cache
+        *           softCount: Integer - count of evicted images that are still kept by soft references
+        *           hits: Long - count of requests that found image in cache
+        *           softHits: Long - count of requests that found evicted image
+        *           misses: Long - count of requests that decoded image
+        *           evictedBytes: Long - total bytes of evicted images */
+		pluginProxy.addMessageListener("gui:get-image-cache-stats", (sender, tag, data) -> {
+			pluginProxy.sendMessage(sender, ImageCache.getInstance().getStats());
+		});
+
+		/* Get statistics of animations driven by JavaFX pulse, like fading of character images.
+        * Public message
+        * Params: None
+        * Returns: Map
+        *           started: Long - count of started animations
+        *           running: Integer - count of running animations
+        *           frames: Map - time between frames while animations run
+        *           updates: Map - time of updating animations per frame
+        *         Time maps contain count, mean, p50, p90, p99, max fields in ms */
+		pluginProxy.addMessageListener("gui:get-animation-stats", (sender, tag, data) -> {
+			pluginProxy.sendMessage(sender, PulseAnimator.getInstance().getStats());
+		});
+
 		/* Set current style file.
         * Public message
         * Params: path: String! - path to skin
@@ -821,6 +854,7 @@ public class App extends Application {
         * Public message
         * Params: Map
         *             delay: Long?
+        *             count: Int? - count of notifications with delay between them, -1 to notify until cancelled, default - 1
         *           or
         *             cancel: Integer! - timer identificator
         *           initialDirectory: String? - dialog initial directory
@@ -851,8 +885,11 @@ public class App extends Application {
 				else
 					delay = Long.valueOf(delayObj.toString());
 
-				if (delay > 0) {
-					new DelayNotifier(sender, delay);
+				Object countObj = m.getOrDefault("count", 1);
+				int count = countObj instanceof Number ? ((Number) countObj).intValue() : Integer.parseInt(countObj.toString());
+
+				if (delay > 0 && count != 0) {
+					new DelayNotifier(sender, delay, count);
 				}
 			});
 		});
@@ -1182,6 +1219,34 @@ public class App extends Application {
 		alert.show();
 	}
 
+	/** Load images of skin in background, sending progress of loading to
+	 * gui-events:skin-load-progress and loading time to gui-events:skin-loaded. **/
+	static void preloadSkin(Skin skin) {
+		if (skin == null) return;
+		String name = skin.getName();
+		AtomicInteger reported = new AtomicInteger();
+		skin.preload((loaded, total) -> {
+			// Progress is reported by every tenth part, not by every image
+			int part = loaded * 10 / total;
+			if (reported.getAndAccumulate(part, Math::max) >= part) return;
+			Main.getPluginProxy().sendMessage("gui-events:skin-load-progress", new HashMap<String, Object>(){{
+				put("skin", name);
+				put("loaded", loaded);
+				put("total", total);
+			}});
+		}).whenComplete((time, e) -> {
+			if (e != null) {
+				Main.log(e);
+				return;
+			}
+			Main.log("skin " + name + " preloaded, " + time / 1000.f);
+			Main.getPluginProxy().sendMessage("gui-events:skin-loaded", new HashMap<String, Object>(){{
+				put("skin", name);
+				put("time", time);
+			}});
+		});
+	}
+
 	private static TemplateBox waitingAlert;
 	private static boolean needAlert;
 	static void showWaitingAlert(Runnable caller) {
@@ -1210,10 +1275,14 @@ public class App extends Application {
 		
 		private final Timeline timeline;
 		private final String tag;
+		private int count;
 
-		DelayNotifier(String tag, long delay) {
+		/** @param count Count of notifications, negative to notify until cancelled **/
+		DelayNotifier(String tag, long delay, int count) {
 			this.tag = tag;
+			this.count = count;
 			timeline = new Timeline(new KeyFrame(Duration.millis(delay), this));
+			timeline.setCycleCount(count < 0 ? Timeline.INDEFINITE : count);
 			delayNotifiers.add(this);
 			timeline.play();
 		}
@@ -1226,7 +1295,8 @@ public class App extends Application {
 		@Override
 		public void handle(javafx.event.ActionEvent actionEvent) {
 			Main.getPluginProxy().sendMessage(tag, null);
-			stop();
+			if (count > 0 && --count == 0)
+				stop();
 		}
 	}
 
@@ -11,6 +11,8 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 
 class DaytimeDependentSkin implements Skin {
@@ -19,6 +21,8 @@ class DaytimeDependentSkin implements Skin {
 
     private Skin skin;
     private Map<Daytime, Path> paths = new HashMap<>();
+    // Skins of daytimes are kept after swap, their images are kept by ImageCache
+    private Map<Path, Skin> skins = new HashMap<>();
 
     DaytimeDependentSkin(Path path) {
         File[] dirs = path.toFile().listFiles();
@@ -54,7 +58,11 @@ class DaytimeDependentSkin implements Skin {
             default:
                 path = oneOf(Daytime.DAY);
         }
-        skin = Files.isDirectory(path) ? new ImageSetSkin(path) : new SingleImageSkin(path);
+        boolean swapped = skin != null;
+        Skin next = skins.computeIfAbsent(path, p -> Files.isDirectory(p) ? new ImageSetSkin(p) : new SingleImageSkin(p));
+        // First skin is preloaded by whoever loads this skin
+        if (swapped && next != skin) next.preload(null);
+        skin = next;
 
         Map<String, Object> m = new HashMap<>();
         m.put("delay", UPDATE_PERIOD);
@@ -98,6 +106,11 @@ class DaytimeDependentSkin implements Skin {
         return skin.getImage(name);
     }
 
+    @Override
+    public CompletableFuture<Long> preload(BiConsumer<Integer, Integer> progress) {
+        return skin.preload(progress);
+    }
+
     @Override
     public Point2D getPreferredBalloonPosition(String imageName) {
         return skin.getPreferredBalloonPosition(imageName);
@@ -0,0 +1,54 @@
+package info.deskchan.gui_javafx;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+
+/** Mask of image pixels that are not fully transparent, one bit per pixel.
+ * Mask is used to check if mouse is over image instead of reading pixels of image. **/
+public class HitMask {
+
+	private final int width, height;
+	private final long[] bits;
+
+	private HitMask(int width, int height) {
+		this.width = width;
+		this.height = height;
+		bits = new long[(int) (((long) width * height + 63) / 64)];
+	}
+
+	/** Make mask of image.
+	 * @return Mask, or null if pixels of image cannot be read **/
+	static HitMask of(Image image) {
+		PixelReader reader = image.getPixelReader();
+		if (reader == null) return null;
+
+		int width = (int) image.getWidth(), height = (int) image.getHeight();
+		HitMask mask = new HitMask(width, height);
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			reader.getPixels(0, y, width, 1, PixelFormat.getIntArgbInstance(), row, 0, width);
+			for (int x = 0, i = y * width; x < width; x++, i++) {
+				if ((row[x] >>> 24) != 0)
+					mask.bits[i >>> 6] |= 1L << i;
+			}
+		}
+		return mask;
+	}
+
+	/** Check if pixel is not fully transparent. Pixels outside of image are transparent. **/
+	public boolean contains(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) return false;
+		int i = y * width + x;
+		return (bits[i >>> 6] & (1L << i)) != 0;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+}
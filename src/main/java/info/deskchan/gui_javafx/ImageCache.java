@@ -0,0 +1,250 @@
+package info.deskchan.gui_javafx;
+
+import javafx.scene.image.Image;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/** Decoded images of all skins, shared by them and limited by memory they take.
+ * Size of image is counted as width * height * 4 bytes, like it is kept decoded.
+ * When images take more than limit, least recently used ones are evicted to soft references,
+ * so they are still returned while garbage collector doesn't need their memory.
+ * Cache also keeps down-scaled variants of images and their hit masks, both are made outside of JavaFX thread. **/
+public class ImageCache {
+
+	static final long DEFAULT_LIMIT = 256L * 1024 * 1024;
+
+	private static final ImageCache instance = new ImageCache();
+
+	public static ImageCache getInstance() {
+		return instance;
+	}
+
+	// Keys are paths for images of files and Variant objects for down-scaled images
+	private final LinkedHashMap<Object, Image> images = new LinkedHashMap<>(64, 0.75f, true);
+	private final Map<Object, Entry> evicted = new HashMap<>();
+	// Files of images and hit masks, kept while images are in use
+	private final Map<Image, Path> files = new WeakHashMap<>();
+	private final Map<Image, HitMask> masks = new WeakHashMap<>();
+	private final Set<Variant> pending = new HashSet<>();
+	private final ReferenceQueue<Image> collected = new ReferenceQueue<>();
+	private long limit = DEFAULT_LIMIT;
+	private long size = 0;
+
+	private long hits = 0, softHits = 0, misses = 0, evictedBytes = 0;
+
+	private static class Entry extends SoftReference<Image> {
+		final Object key;
+
+		Entry(Object key, Image image, ReferenceQueue<Image> queue) {
+			super(image, queue);
+			this.key = key;
+		}
+	}
+
+	private static class Variant {
+		final Path file;
+		final int width, height;
+
+		Variant(Path file, int width, int height) {
+			this.file = file;
+			this.width = width;
+			this.height = height;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Variant)) return false;
+			Variant variant = (Variant) other;
+			return file.equals(variant.file) && width == variant.width && height == variant.height;
+		}
+
+		@Override
+		public int hashCode() {
+			return (file.hashCode() * 31 + width) * 31 + height;
+		}
+	}
+
+	static long sizeOf(Image image) {
+		return (long) image.getWidth() * (long) image.getHeight() * 4;
+	}
+
+	/** Get decoded image of file, decoding it if cache doesn't have it.
+	 * @return Image, or null if file cannot be decoded **/
+	Image get(Path file) {
+		file = file.toAbsolutePath();
+		Image image = find(file);
+		if (image != null) return image;
+
+		// Image is decoded without lock, so different images are decoded in parallel
+		image = decode(file, 0, 0);
+		if (image == null) return null;
+		HitMask mask = HitMask.of(image);
+
+		synchronized (this) {
+			Image previous = images.get(file);
+			if (previous != null) return previous;
+			files.put(image, file);
+			if (mask != null) masks.put(image, mask);
+			add(file, image);
+		}
+		return image;
+	}
+
+	/** Get image scaled down to given scale. Variant is made in background if cache doesn't have it yet,
+	 * so source image is returned at first and callback is called from background thread when variant is ready.
+	 * Variants are made only for images of files loaded by this cache and only for scale less than 1.
+	 * @param source Full-size image
+	 * @param scale Scale of image, from 0 to 1
+	 * @param onReady Callback that gets variant made in background, nullable
+	 * @return Variant of image, or source image if variant is not ready or not needed **/
+	public Image getScaled(Image source, double scale, Consumer<Image> onReady) {
+		if (source == null || scale <= 0 || scale >= 1) return source;
+		Variant variant;
+		synchronized (this) {
+			Path file = files.get(source);
+			if (file == null) return source;
+			variant = new Variant(file,
+					(int) Math.max(1, Math.round(source.getWidth() * scale)),
+					(int) Math.max(1, Math.round(source.getHeight() * scale)));
+		}
+
+		Image image = find(variant);
+		if (image != null) return image;
+		synchronized (this) {
+			if (!pending.add(variant)) return source;
+		}
+
+		CompletableFuture.runAsync(() -> {
+			// JavaFX resamples image while decoding it, which is better and faster than resizing decoded image
+			Image scaled = decode(variant.file, variant.width, variant.height);
+			synchronized (this) {
+				pending.remove(variant);
+				if (scaled == null) return;
+				Image previous = images.get(variant);
+				if (previous != null) {
+					scaled = previous;
+				} else {
+					add(variant, scaled);
+				}
+			}
+			if (onReady != null) onReady.accept(scaled);
+		});
+		return source;
+	}
+
+	/** Get mask of non-transparent pixels of image. Mask is made when image is loaded,
+	 * or now if image was not loaded by this cache. **/
+	public HitMask getHitMask(Image image) {
+		if (image == null) return null;
+		synchronized (this) {
+			HitMask mask = masks.get(image);
+			if (mask != null) return mask;
+		}
+		HitMask mask = HitMask.of(image);
+		if (mask == null) return null;
+		synchronized (this) {
+			masks.put(image, mask);
+		}
+		return mask;
+	}
+
+	private synchronized Image find(Object key) {
+		Image image = images.get(key);
+		if (image != null) {
+			hits++;
+			return image;
+		}
+		Entry entry = evicted.remove(key);
+		image = entry != null ? entry.get() : null;
+		if (image != null) {
+			softHits++;
+			add(key, image);
+			return image;
+		}
+		misses++;
+		return null;
+	}
+
+	private static Image decode(Path file, int width, int height) {
+		Image image;
+		try (InputStream inputStream = Files.newInputStream(file)) {
+			image = new Image(inputStream, width, height, false, true);
+		} catch (IOException e) {
+			Main.log(e);
+			return null;
+		}
+		if (image.isError()) {
+			Main.log("Cannot load image " + file + ": " + image.getException());
+			return null;
+		}
+		return image;
+	}
+
+	private void add(Object key, Image image) {
+		images.put(key, image);
+		size += sizeOf(image);
+		trim();
+	}
+
+	/** Move least recently used images to soft references until images fit into limit.
+	 * The last used image is always kept, even if it is bigger than limit. **/
+	private void trim() {
+		purge();
+		Iterator<Map.Entry<Object, Image>> it = images.entrySet().iterator();
+		while (size > limit && images.size() > 1) {
+			Map.Entry<Object, Image> eldest = it.next();
+			long bytes = sizeOf(eldest.getValue());
+			size -= bytes;
+			evictedBytes += bytes;
+			evicted.put(eldest.getKey(), new Entry(eldest.getKey(), eldest.getValue(), collected));
+			it.remove();
+		}
+	}
+
+	/** Remove soft references to images collected by garbage collector. **/
+	private void purge() {
+		Entry entry;
+		while ((entry = (Entry) collected.poll()) != null)
+			evicted.remove(entry.key, entry);
+	}
+
+	/** Set memory limit of cache.
+	 * @param bytes Count of bytes that images can take **/
+	synchronized void setLimit(long bytes) {
+		limit = bytes > 0 ? bytes : DEFAULT_LIMIT;
+		trim();
+	}
+
+	synchronized void clear() {
+		images.clear();
+		evicted.clear();
+		files.clear();
+		masks.clear();
+		size = 0;
+	}
+
+	/** Get statistics of cache as map with keys: size, limit, count, softCount, hits, softHits, misses, evictedBytes.
+	 * Sizes are in bytes, soft hits are counted separately from hits. **/
+	public synchronized Map<String, Object> getStats() {
+		purge();
+		Map<String, Object> stats = new HashMap<>();
+		stats.put("size", size);
+		stats.put("limit", limit);
+		stats.put("count", images.size());
+		stats.put("softCount", evicted.size());
+		stats.put("hits", hits);
+		stats.put("softHits", softHits);
+		stats.put("misses", misses);
+		stats.put("evictedBytes", evictedBytes);
+		return stats;
+	}
+
+}
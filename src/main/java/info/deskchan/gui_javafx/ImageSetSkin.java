@@ -3,14 +3,15 @@ package info.deskchan.gui_javafx;
 import javafx.geometry.Point2D;
 import javafx.scene.image.Image;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 class ImageSetSkin implements Skin {
 	private final String[][] replacing = {
@@ -24,15 +25,20 @@ class ImageSetSkin implements Skin {
 			{"waiting", "normal"},
 			{"mad", "grin", "rage", "scared"}
 	};
+	// Formats supported by JavaFX Image, other files of skin like properties.txt are not sprites
+	private static final Set<String> IMAGE_EXTENSIONS = new HashSet<>(Arrays.asList("png", "jpg", "jpeg", "gif", "bmp"));
+
 	private final Path path;
 	private final String skinName;
-	private final Map<String, List<Image>> images = new HashMap<>();
+	// Files of every sprite, skin directory is listed once when skin is created
+	private final Map<String, List<Path>> index;
 	private final Path propertiesPath;
 	private final Properties properties = new Properties();
 	
 	ImageSetSkin(Path path) {
 		this.path = path;
 		skinName = Skin.getSkinsPath().relativize(path).toString();
+		index = createIndex(path);
 
 		propertiesPath = Main.getPluginProxy().getDataDirPath().resolve(
 				"skin_" + skinName + ".properties"
@@ -53,50 +59,81 @@ class ImageSetSkin implements Skin {
 		return skinName;
 	}
 
-	private List<Image> getImageArray(String name) {
-		List<Image> l = images.getOrDefault(name, null);
-		if (l != null) {
-			return l;
-		}
-		l = new ArrayList<>();
-		Path imagePath = path.resolve(name);
-		if (Files.isDirectory(imagePath)) {
-			try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(imagePath)) {
-				for (Path imgPath : directoryStream) {
-					try (InputStream inputStream = Files.newInputStream(imgPath)) {
-						l.add(new Image(inputStream));
+	/** Map sprite names to their files. Sprite is either directory with variants of image,
+	 * or files with the same name before first dot. Directory takes precedence over files.
+	 * Only images are indexed, so preloading skips other files of skin. **/
+	private static Map<String, List<Path>> createIndex(Path path) {
+		Map<String, List<Path>> files = new HashMap<>(), directories = new HashMap<>();
+		try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(path)) {
+			for (Path file : directoryStream) {
+				String fileName = file.getFileName().toString();
+				if (Files.isDirectory(file)) {
+					List<Path> variants = new ArrayList<>();
+					try (DirectoryStream<Path> variantsStream = Files.newDirectoryStream(file)) {
+						for (Path variant : variantsStream)
+							if (isImage(variant)) variants.add(variant);
 					} catch (IOException e) {
-						Main.getPluginProxy().log(e);
+						Main.log(e);
 					}
+					directories.put(fileName, variants);
+				} else if (isImage(file)) {
+					int index = fileName.indexOf('.');
+					if (index >= 0) fileName = fileName.substring(0, index);
+					files.computeIfAbsent(fileName, k -> new ArrayList<>()).add(file);
 				}
-			} catch (IOException e) {
-				Main.getPluginProxy().log(e);
 			}
-		} else {
-			File[] files = path.toFile().listFiles();
-			if (files == null) return l;
+		} catch (IOException e) {
+			Main.log(e);
+		}
+		files.putAll(directories);
+		return files;
+	}
 
-			for (File file : files){
-				String fileName = file.getName(); int index = fileName.indexOf('.');
-				if (index >= 0) fileName = fileName.substring(0, index);
+	private static boolean isImage(Path file) {
+		String fileName = file.getFileName().toString();
+		int index = fileName.lastIndexOf('.');
+		return index >= 0 && IMAGE_EXTENSIONS.contains(fileName.substring(index + 1).toLowerCase());
+	}
 
-				if (fileName.equals(name)){
-					try (InputStream inputStream = Files.newInputStream(file.toPath())) {
-						l.add(new Image(inputStream));
-					} catch (IOException e) {
-						Main.getPluginProxy().log(e);
-					}
-				}
+	/** Get random variant of sprite, images are taken from {@link ImageCache}.
+	 * @return Image, or null if skin has no sprite with such name or it cannot be loaded **/
+	private Image getRandomImage(String name) {
+		List<Path> files = index.get(name);
+		if (files == null || files.size() == 0) {
+			return null;
+		}
+		// Variants that cannot be loaded are skipped
+		int start = ThreadLocalRandom.current().nextInt(0, files.size());
+		for (int i = 0; i < files.size(); i++) {
+			Image image = ImageCache.getInstance().get(files.get((start + i) % files.size()));
+			if (image != null) {
+				return image;
 			}
 		}
-		images.put(name, l);
-		return l;
+		return null;
+	}
+
+	@Override
+	public CompletableFuture<Long> preload(BiConsumer<Integer, Integer> progress) {
+		long start = System.currentTimeMillis();
+		List<Path> files = new ArrayList<>();
+		for (List<Path> variants : index.values()) files.addAll(variants);
+		AtomicInteger loaded = new AtomicInteger();
+
+		return CompletableFuture.supplyAsync(() -> {
+			files.parallelStream().forEach(file -> {
+				ImageCache.getInstance().get(file);
+				int count = loaded.incrementAndGet();
+				if (progress != null) progress.accept(count, files.size());
+			});
+			return System.currentTimeMillis() - start;
+		});
 	}
 	
 	@Override
 	public Image getImage(String name) {
-		List<Image> l = getImageArray(name);
-		if (l.size() == 0) {
+		Image image = getRandomImage(name);
+		if (image == null) {
 			for (String[] aReplacing : replacing) {
 				for (int j = 0; j < aReplacing.length; j++) {
 					if (aReplacing[j].equals(name)) {
@@ -104,9 +141,9 @@ class ImageSetSkin implements Skin {
 							if (k == j) {
 								continue;
 							}
-							l = getImageArray(aReplacing[k]);
-							if (l.size() != 0) {
-								return l.get(ThreadLocalRandom.current().nextInt(0, l.size()));
+							image = getRandomImage(aReplacing[k]);
+							if (image != null) {
+								return image;
 							}
 						}
 					}
@@ -118,8 +155,7 @@ class ImageSetSkin implements Skin {
 				return getImage("normal");
 			}
 		}
-		int i = ThreadLocalRandom.current().nextInt(0, l.size());
-		return l.get(i);
+		return image;
 	}
 	
 	@Override
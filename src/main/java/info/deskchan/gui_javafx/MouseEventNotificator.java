@@ -1,5 +1,6 @@
 package info.deskchan.gui_javafx;
 
+import javafx.event.EventHandler;
 import javafx.scene.Node;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
@@ -27,6 +28,11 @@ public class MouseEventNotificator {
 
     private NativeMouseWheelListener mouseWheelListener;
 
+    // Filters are kept to be removed later, every method reference creates a new object
+    private final EventHandler<MouseEvent> clickFilter = this::notifyClickEvent;
+    private final EventHandler<MouseEvent> movedFilter = this::notifyMovedEvent;
+    private final EventHandler<ScrollEvent> scrollFilter = this::notifyScrollEvent;
+
     // Gets rid of all garbage messages from the GlobalScreen of JNativeHook.
     static {
         Logger logger = Logger.getLogger(GlobalScreen.class.getPackage().getName());
@@ -163,7 +169,7 @@ public class MouseEventNotificator {
      * @return itself to let you use a chain of calls
      */
     public MouseEventNotificator setOnClickListener() {
-        sender.addEventFilter(MouseEvent.MOUSE_CLICKED, this::notifyClickEvent);
+        sender.addEventFilter(MouseEvent.MOUSE_CLICKED, clickFilter);
         return this;
     }
 
@@ -172,7 +178,7 @@ public class MouseEventNotificator {
      * @return itself to let you use a chain of calls
      */
     public MouseEventNotificator setOnMovedListener() {
-        sender.addEventFilter(MouseEvent.MOUSE_MOVED, this::notifyMovedEvent);
+        sender.addEventFilter(MouseEvent.MOUSE_MOVED, movedFilter);
         return this;
     }
 
@@ -191,14 +197,14 @@ public class MouseEventNotificator {
                 } catch (NativeHookException | UnsatisfiedLinkError e) {
                     e.printStackTrace();
                     Main.log("Failed to initialize the native hooking. Rolling back to using JavaFX events...");
-                    sender.addEventFilter(ScrollEvent.SCROLL, this::notifyScrollEvent);
+                    sender.addEventFilter(ScrollEvent.SCROLL, scrollFilter);
                     return this;
                 }
             }
             mouseWheelListener = event -> notifyScrollEvent(event, intersectionTestFunc);
             GlobalScreen.addNativeMouseWheelListener(mouseWheelListener);
         } else {
-            sender.addEventFilter(ScrollEvent.SCROLL, this::notifyScrollEvent);
+            sender.addEventFilter(ScrollEvent.SCROLL, scrollFilter);
         }
 
         return this;
@@ -209,8 +215,9 @@ public class MouseEventNotificator {
      */
     public void cleanListeners() {
         // All methods have their own internal checks for the case when a filter is not set and equals null.
-        sender.removeEventFilter(MouseEvent.MOUSE_CLICKED, this::notifyClickEvent);
-        sender.removeEventFilter(ScrollEvent.SCROLL, this::notifyScrollEvent);
+        sender.removeEventFilter(MouseEvent.MOUSE_CLICKED, clickFilter);
+        sender.removeEventFilter(MouseEvent.MOUSE_MOVED, movedFilter);
+        sender.removeEventFilter(ScrollEvent.SCROLL, scrollFilter);
         if (SystemUtils.IS_OS_WINDOWS) {
             GlobalScreen.removeNativeMouseWheelListener(mouseWheelListener);
         }
@@ -0,0 +1,132 @@
+package info.deskchan.gui_javafx;
+
+import info.deskchan.core.LatencyHistogram;
+import javafx.animation.AnimationTimer;
+import javafx.animation.Interpolator;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleConsumer;
+
+/** Animations driven by JavaFX pulse. All running animations are updated by one timer once per frame,
+ * with time of frame, so they don't depend on how often timer is called.
+ * Animator measures time between frames and time spent on updates while animations are running.
+ * Animations are started, updated and stopped in JavaFX thread only. **/
+public class PulseAnimator {
+
+	private static final PulseAnimator instance = new PulseAnimator();
+
+	public static PulseAnimator getInstance() {
+		return instance;
+	}
+
+	/** Running animation. **/
+	public class Animation {
+		private final long duration;
+		private final Interpolator interpolator;
+		private final DoubleConsumer update;
+		private final Runnable onFinished;
+		private long start = -1;
+
+		private Animation(Duration duration, Interpolator interpolator, DoubleConsumer update, Runnable onFinished) {
+			this.duration = Math.max(1, (long) (duration.toMillis() * 1000000));
+			this.interpolator = interpolator != null ? interpolator : Interpolator.LINEAR;
+			this.update = update;
+			this.onFinished = onFinished;
+		}
+
+		/** Stop animation without finishing it. **/
+		public void stop() {
+			animations.remove(this);
+			running = animations.size();
+		}
+
+		/** @return True if animation is finished **/
+		private boolean pulse(long now) {
+			if (start < 0) start = now;
+			double fraction = Math.min(1, (now - start) / (double) duration);
+			update.accept(interpolator.interpolate(0.0, 1.0, fraction));
+			return fraction >= 1;
+		}
+	}
+
+	private final List<Animation> animations = new ArrayList<>();
+	private final LatencyHistogram frames = new LatencyHistogram(), updates = new LatencyHistogram();
+	// Counts are copied from JavaFX thread, so statistics can be read from any thread
+	private volatile long animationsCount = 0;
+	private volatile int running = 0;
+	private long lastPulse = -1;
+
+	private final AnimationTimer timer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			pulse(now);
+		}
+	};
+
+	/** Start animation.
+	 * @param duration Duration of animation
+	 * @param interpolator Curve of animation, linear if null
+	 * @param update Called every frame with interpolated value from 0 to 1, the last call gets 1
+	 * @param onFinished Called after the last update, nullable
+	 * @return Started animation **/
+	public Animation play(Duration duration, Interpolator interpolator, DoubleConsumer update, Runnable onFinished) {
+		Animation animation = new Animation(duration, interpolator, update, onFinished);
+		animations.add(animation);
+		animationsCount++;
+		running = animations.size();
+		if (animations.size() == 1) {
+			lastPulse = -1;
+			timer.start();
+		}
+		return animation;
+	}
+
+	private void pulse(long now) {
+		if (lastPulse >= 0) frames.record(now - lastPulse);
+		lastPulse = now;
+
+		long start = System.nanoTime();
+		// Animations can be started or stopped by callbacks
+		for (Animation animation : new ArrayList<>(animations)) {
+			if (!animations.contains(animation)) continue;
+			if (animation.pulse(now)) {
+				animations.remove(animation);
+				if (animation.onFinished != null) animation.onFinished.run();
+			}
+		}
+		updates.record(System.nanoTime() - start);
+		running = animations.size();
+
+		if (animations.isEmpty()) timer.stop();
+	}
+
+	/** Get curve of animation by name: linear, ease-in, ease-out, ease-both or discrete.
+	 * @return Curve, or linear curve if name is unknown **/
+	public static Interpolator getInterpolator(String name) {
+		if (name == null) return Interpolator.LINEAR;
+		switch (name) {
+			case "ease-in":   return Interpolator.EASE_IN;
+			case "ease-out":  return Interpolator.EASE_OUT;
+			case "ease-both": return Interpolator.EASE_BOTH;
+			case "discrete":  return Interpolator.DISCRETE;
+			default:          return Interpolator.LINEAR;
+		}
+	}
+
+	/** Get statistics of animations: count of started animations, count of running animations,
+	 * time between frames and time of updating animations per frame, both with count, mean, p50, p90, p99, max fields in ms.
+	 * Can be called from any thread. **/
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<>();
+		stats.put("started", animationsCount);
+		stats.put("running", running);
+		stats.put("frames", frames.toMap());
+		stats.put("updates", updates.toMap());
+		return stats;
+	}
+
+}
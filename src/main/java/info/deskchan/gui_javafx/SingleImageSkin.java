@@ -3,35 +3,20 @@ package info.deskchan.gui_javafx;
 import javafx.geometry.Point2D;
 import javafx.scene.image.Image;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 class SingleImageSkin implements Skin {
 	
 	private final Path path;
-	private final Image image;
 	private final Path propertiesPath;
 	private final Properties properties = new Properties();
 	
 	SingleImageSkin(Path path) {
 		this.path = path;
-		InputStream stream = null;
-		try {
-			stream = Files.newInputStream(path);
-		} catch (IOException e) {
-			Main.getInstance().getPluginProxy().log(e);
-		}
-		image = (stream != null) ? new Image(stream) : null;
-		if (stream != null) {
-			try {
-				stream.close();
-			} catch (IOException e) {
-				Main.log(e);
-			}
-		}
 		propertiesPath = Main.getInstance().getPluginProxy().getDataDirPath().resolve(
 				"skin_" + getName() + ".properties"
 		);
@@ -55,7 +40,17 @@ class SingleImageSkin implements Skin {
 	
 	@Override
 	public Image getImage(String name) {
-		return image;
+		return ImageCache.getInstance().get(path);
+	}
+
+	@Override
+	public CompletableFuture<Long> preload(BiConsumer<Integer, Integer> progress) {
+		long start = System.currentTimeMillis();
+		return CompletableFuture.supplyAsync(() -> {
+			ImageCache.getInstance().get(path);
+			if (progress != null) progress.accept(1, 1);
+			return System.currentTimeMillis() - start;
+		});
 	}
 	
 	@Override
@@ -10,6 +10,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 public interface Skin {
 	
@@ -20,6 +22,13 @@ public interface Skin {
 	Point2D getPreferredBalloonPosition(String imageName);
 	
 	void overridePreferredBalloonPosition(String imageName, Point2D position);
+
+	/** Load all images of skin in background, so they are not decoded when shown first time.
+	 * @param progress Called from loading threads with count of loaded image files and total count of them, nullable
+	 * @return Future completed with loading time in milliseconds **/
+	default CompletableFuture<Long> preload(BiConsumer<Integer, Integer> progress) {
+		return CompletableFuture.completedFuture(0L);
+	}
 	
 	static Path getSkinsPath() {
 		Path path = PluginManager.getAssetsDirPath().resolve("skins");
@@ -1,5 +1,6 @@
 package info.deskchan.gui_javafx.panes;
 
+import info.deskchan.core_utils.LimitHashMap;
 import info.deskchan.gui_javafx.App;
 import info.deskchan.gui_javafx.LocalFont;
 import info.deskchan.gui_javafx.Main;
@@ -29,13 +30,16 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 public class Balloon extends MovablePane {
 
     private static List<Balloon> openedBalloons = new LinkedList<>();
 
+    // Drawers are immutable, so the same file is parsed only once while it is not changed
+    private static final Map<String, BalloonDrawer> drawers = new LimitHashMap<>(8);
+
     protected static BalloonDrawer getDrawer(String pathKey){
-        BalloonDrawer drawer;
         String path = Main.getPluginProxy().getProperties().getString(pathKey);
         if (path == null || !new File(path).exists()){
             path = Main.getPluginProxy().getAssetsDirPath().resolve("balloons").resolve("bubble.svg").toString();
@@ -44,6 +48,17 @@ public class Balloon extends MovablePane {
             }
         }
 
+        String key = path + "@" + new File(path).lastModified();
+        BalloonDrawer drawer = drawers.get(key);
+        if (drawer == null){
+            drawer = createDrawer(path);
+            drawers.put(key, drawer);
+        }
+        return drawer;
+    }
+
+    private static BalloonDrawer createDrawer(String path){
+        BalloonDrawer drawer;
         if (SVGBalloonDrawer.canRead(path)){
             drawer = new SVGBalloonDrawer(path);
         } else if (ImageBalloonDrawer.canRead(path)){
@@ -145,6 +160,11 @@ public class Balloon extends MovablePane {
         OverlayStage.getInstance().hideBalloon(this);
     }
 
+    /** Stop updating balloon by global settings, balloon will not be shown anymore. **/
+    void dispose() {
+        openedBalloons.remove(this);
+    }
+
     private static final String DEFAULT_FONT = "PT Sans, 16.0";
 
     public static void setDefaultFont(String font) {
@@ -169,6 +189,7 @@ public class Balloon extends MovablePane {
         private Node bubble;
         private Node content;
         private Insets margin;
+        private StackPane contentPane;
 
         BubblePane(Node bubbles, Node content, Insets margin){
             super();
@@ -176,7 +197,7 @@ public class Balloon extends MovablePane {
             this.content = content;
             this.margin = margin;
 
-            StackPane contentPane = new StackPane();
+            contentPane = new StackPane();
             contentPane.getChildren().add(content);
             contentPane.prefHeightProperty().bind(prefHeightProperty());
 
@@ -188,6 +209,11 @@ public class Balloon extends MovablePane {
             return bubble.getLayoutBounds().getWidth() - margin.getRight() - margin.getLeft();
         }
 
+        /** Reserve height for content, so balloon doesn't change its size while content grows. **/
+        public void setContentHeight(double height){
+            contentPane.setMinHeight(height + margin.getTop() + margin.getBottom());
+        }
+
         public double getBubbleWidth(){
             return bubble.getLayoutBounds().getWidth();
         }
@@ -216,13 +242,12 @@ public class Balloon extends MovablePane {
         }
     }
 
+    /** Shape of balloon read from file. Drawer is not changed after it is created and makes new nodes for every balloon. **/
     static abstract class BalloonDrawer {
 
         protected Insets margin;
         protected String textStyle;
 
-        abstract BalloonDrawer copy();
-
         abstract BubblePane createBalloon(Node content);
 
         protected static Document getDocument(String path){
@@ -291,12 +316,43 @@ public class Balloon extends MovablePane {
 
     static class SVGBalloonDrawer extends BalloonDrawer {
 
-        private SVGPath[] bubbleShapes;
+        /** Parsed SVG path, nodes are made from it for every balloon. **/
+        private static class ShapeTemplate {
+            final String content;
+            final String style;
+            final Color fill, stroke;
+            final double scaleX, scaleY;
 
-        private SVGBalloonDrawer(){ }
+            ShapeTemplate(String content, String style){
+                this(content, style, null, null, 1, 1);
+            }
+
+            ShapeTemplate(String content, String style, Color fill, Color stroke, double scaleX, double scaleY){
+                this.content = content;
+                this.style = style;
+                this.fill = fill;
+                this.stroke = stroke;
+                this.scaleX = scaleX;
+                this.scaleY = scaleY;
+            }
+
+            SVGPath create(){
+                SVGPath shape = new SVGPath();
+                shape.setContent(content);
+                if (style != null) shape.setStyle(style);
+                if (fill != null) shape.setFill(fill);
+                if (stroke != null) shape.setStroke(stroke);
+                shape.setScaleX(scaleX);
+                shape.setScaleY(scaleY);
+                return shape;
+            }
+        }
+
+        private final ShapeTemplate[] bubbleShapes;
 
         public SVGBalloonDrawer(String path){
             Document document = getDocument(path);
+            ShapeTemplate[] templates;
             try {
                 margin = getMargin(document);
 
@@ -305,23 +361,22 @@ public class Balloon extends MovablePane {
                 XPathExpression expression = xpath.compile("//path");
 
                 NodeList svgPaths = (NodeList) expression.evaluate(document, XPathConstants.NODESET);
-                ArrayList<SVGPath> shapes = new ArrayList<>();
+                ArrayList<ShapeTemplate> shapes = new ArrayList<>();
                 for(int i=0; i<svgPaths.getLength(); i++) {
                     try {
-                        SVGPath shape = new SVGPath();
                         NamedNodeMap map = svgPaths.item(i).getAttributes();
-                        shape.setContent(map.getNamedItem("d").getTextContent());
+                        String style;
                         if(map.getNamedItem("style") != null) {
-                            shape.setStyle(convertStyle(map.getNamedItem("style").getTextContent()));
+                            style = convertStyle(map.getNamedItem("style").getTextContent());
                         } else {
-                            shape.setStyle("-fx-fill: white; -fx-stroke-width: 2;");
+                            style = "-fx-fill: white; -fx-stroke-width: 2;";
                         }
-                        shapes.add(shape);
+                        shapes.add(new ShapeTemplate(map.getNamedItem("d").getTextContent(), style));
                     } catch (Exception e){
                         Main.log(e);
                     }
                 }
-                bubbleShapes = shapes.toArray(new SVGPath[shapes.size()]);
+                templates = shapes.toArray(new ShapeTemplate[shapes.size()]);
 
                 textStyle = getTextStyle(document);
             } catch (Exception e){
@@ -332,35 +387,25 @@ public class Balloon extends MovablePane {
                         "238.667342,-25.3559002 336.593752,-69.3438 69.80799,78.7043 181.84985,84.1354 378.90625,5.3126 " +
                         "-149.2328,-8.9191 -166.3627,-41.22 -200.6562,-124.031305 80.6876,-78.49713 128.5,-176.04496 " +
                         "128.5,-281.75 0,-259.46468 -288.0205,-469.78125 -643.343802,-469.78125 z";
-                bubbleShapes = new SVGPath[1];
-                bubbleShapes[0] = new SVGPath();
-
-                bubbleShapes[0].setContent(BUBBLE_SVG_PATH);
-                bubbleShapes[0].setFill(Color.WHITE);
-                bubbleShapes[0].setStroke(Color.BLACK);
-
-                bubbleShapes[0].setScaleX(0.3);
-                bubbleShapes[0].setScaleY(0.23);
+                templates = new ShapeTemplate[]{
+                        new ShapeTemplate(BUBBLE_SVG_PATH, null, Color.WHITE, Color.BLACK, 0.3, 0.23)
+                };
 
                 margin = new Insets(40, 40, 20, 20);
             }
+            bubbleShapes = templates;
         }
 
         public BubblePane createBalloon(Node content){
             content.setStyle(textStyle);
 
-            Group bubblesGroup = new Group(bubbleShapes);
+            Group bubblesGroup = new Group();
+            for (ShapeTemplate shape : bubbleShapes)
+                bubblesGroup.getChildren().add(shape.create());
 
             return new BubblePane(bubblesGroup, content, margin);
         }
 
-        public BalloonDrawer copy(){
-            SVGBalloonDrawer drawer = new SVGBalloonDrawer();
-            drawer.bubbleShapes = bubbleShapes;
-            drawer.margin = margin;
-            return drawer;
-        }
-
         public static boolean canRead(String path){
             return path.endsWith(".svg");
         }
@@ -377,7 +422,6 @@ public class Balloon extends MovablePane {
         }
 
         Image image;
-        private ImageBalloonDrawer(){ }
 
         public ImageBalloonDrawer(String path){
             try {
@@ -406,12 +450,5 @@ public class Balloon extends MovablePane {
             return new BubblePane(view, content, margin);
         }
 
-        public BalloonDrawer copy(){
-            ImageBalloonDrawer drawer = new ImageBalloonDrawer();
-            drawer.image = image;
-            drawer.margin = margin;
-            return drawer;
-        }
-
     }
 }
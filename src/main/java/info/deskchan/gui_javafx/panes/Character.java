@@ -1,12 +1,10 @@
 package info.deskchan.gui_javafx.panes;
 
 import info.deskchan.gui_javafx.*;
-import javafx.animation.Animation;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
-import javafx.event.EventHandler;
+import javafx.application.Platform;
 import javafx.geometry.Point2D;
 import javafx.geometry.Rectangle2D;
+import javafx.scene.CacheHint;
 import javafx.scene.Parent;
 import javafx.scene.control.ContextMenu;
 import javafx.scene.effect.DropShadow;
@@ -15,7 +13,6 @@ import javafx.scene.effect.Light;
 import javafx.scene.effect.Lighting;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.PixelReader;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.paint.Color;
@@ -101,16 +98,10 @@ public class Character extends MovablePane {
 					x0 /= scaleFactor;
 					y0 /= scaleFactor;
 
-					PixelReader imagePixels = imageView.getImage().getPixelReader();
-					if (imageView.getImage() != null && x0 < imageView.getImage().getWidth() && y0 < imageView.getImage().getHeight()){
-						try {
-							Color pixelColor = imagePixels.getColor((int) x0, (int) y0);
-							return !pixelColor.equals(Color.TRANSPARENT);
-						} catch (Exception e){
-							return true;
-						}
-					}
-					return false;
+					// Mask is made from full-size image when it is loaded, so pixels are not read here
+					HitMask mask = ImageCache.getInstance().getHitMask(imageView.getImage());
+					if (mask == null) return imageView.getImage() != null;
+					return mask.contains((int) x0, (int) y0);
 				});
 
 		layoutXProperty().addListener(CharacterBalloon.updateBalloonLayoutX);
@@ -174,6 +165,11 @@ public class Character extends MovablePane {
 		imageView.setFitHeight(newHeight);
 		resize(newWidth, newHeight);
 
+		// Down-scaled variant of image is shown instead of resampling full-size image on every frame
+		imageView.showVariant(image, ImageCache.getInstance().getScaled(image, scaleFactor,
+				variant -> Platform.runLater(() -> imageView.showVariant(image, variant))
+		));
+
 		Lighting lighting = null;
 		if (skinColor != null && !skinColor.equals(new Color(1,1,1,1))) {
 			lighting = new Lighting();
@@ -330,7 +326,7 @@ public class Character extends MovablePane {
 		    setImageName(messageInfo.characterImage);
 
 		messageInfo.notifySender();
-		balloon = new CharacterBalloon(this, messageInfo.text[messageInfo.counter]);
+		balloon = CharacterBalloon.obtain(this, messageInfo.text[messageInfo.counter]);
 		messageInfo.counter++;
 		balloon.setTimeout(messageInfo.timeout);
 		balloon.show();
@@ -559,57 +555,84 @@ public class Character extends MovablePane {
         }
 	}
 
-	class AnimatedImageView extends Parent implements EventHandler<javafx.event.ActionEvent> {
+	/** Image view that crossfades images. Fade is driven by {@link PulseAnimator}, its duration and curve are set by
+	 * skin.transition.duration (in ms) and skin.transition.curve properties. While images fade, they are cached
+	 * as bitmaps with effects applied, so effect is not rendered again on every frame. **/
+	class AnimatedImageView extends Parent {
 
 		private ImageView mainImage = new ImageView();
 		private ImageView secondImage = new ImageView();
+		// Full-size images of views, views can show their down-scaled variants
+		private Image mainSource, secondSource;
 		private Effect effect;
-		private Timeline timeline;
+		private PulseAnimator.Animation transition;
 
 		AnimatedImageView(){
 			getChildren().add(mainImage);
 			getChildren().add(secondImage);
 			secondImage.setOpacity(0);
-			timeline = new Timeline(new KeyFrame(Duration.millis(20), this));
 		}
 
 		public void setImage(Image image){
-			if (mainImage.getImage() == image) return;
+			if (mainSource == image) return;
 			swap();
+			mainSource = image;
 			mainImage.setImage(image);
 			mainImage.setOpacity(0);
 			mainImage.setEffect(effect);
 			secondImage.setOpacity(1);
-			if (timeline.getStatus() == Animation.Status.RUNNING){
-				timeline.stop();
+			if (transition != null){
+				transition.stop();
 			}
-			timeline.setCycleCount(10);
-			timeline.play();
+			setCached(effect != null);
+			transition = PulseAnimator.getInstance().play(
+					Duration.millis(Main.getProperties().getInteger("skin.transition.duration", 200)),
+					PulseAnimator.getInterpolator(Main.getProperties().getString("skin.transition.curve")),
+					opacity -> {
+						mainImage.setOpacity(opacity);
+						secondImage.setOpacity(1 - opacity);
+					},
+					() -> {
+						secondImage.setImage(null);
+						secondSource = null;
+						setCached(false);
+						transition = null;
+					}
+			);
 		}
 
-		@Override
-		public void handle(javafx.event.ActionEvent actionEvent) {
-			double opacity = mainImage.getOpacity() + 0.1;
-			mainImage.setOpacity(opacity);
-			secondImage.setOpacity(1 - opacity);
-			if (opacity >= 1)
-				secondImage.setImage(null);
+		private void setCached(boolean cached){
+			for (ImageView view : new ImageView[]{ mainImage, secondImage }) {
+				view.setCache(cached);
+				view.setCacheHint(cached ? CacheHint.SPEED : CacheHint.DEFAULT);
+			}
 		}
 
 		private void swap(){
 			ImageView t = mainImage;
 			mainImage = secondImage;
 			secondImage = t;
+			Image s = mainSource;
+			mainSource = secondSource;
+			secondSource = s;
+		}
+
+		/** Show variant of image if image is still shown and variant has size image is shown with. **/
+		void showVariant(Image source, Image variant){
+			if (variant == null || mainSource != source) return;
+			if (variant != source && (Math.round(getFitWidth()) != (long) variant.getWidth() ||
+			                          Math.round(getFitHeight()) != (long) variant.getHeight())) return;
+			mainImage.setImage(variant);
 		}
 
-		public Image getImage(){ return mainImage.getImage(); }
+		public Image getImage(){ return mainSource; }
 
 		public double getWidth(){
-			return mainImage.getImage() != null ? mainImage.getImage().getWidth() : 0;
+			return mainSource != null ? mainSource.getWidth() : 0;
 		}
 
 		public double getHeight(){
-			return mainImage.getImage() != null ?   mainImage.getImage().getHeight() : 0;
+			return mainSource != null ? mainSource.getHeight() : 0;
 		}
 
 		public double getFitWidth(){
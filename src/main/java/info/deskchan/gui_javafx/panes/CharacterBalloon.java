@@ -15,6 +15,9 @@ import javafx.scene.text.Font;
 import javafx.scene.text.Text;
 import javafx.util.Duration;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+
 public class CharacterBalloon extends Balloon {
 
 	private static CharacterBalloon instance;
@@ -37,8 +40,24 @@ public class CharacterBalloon extends Balloon {
 
 	protected static BalloonDrawer drawer;
 
+	// Closed balloons are kept to show next messages, one balloon is shown at a time
+	private static final int POOL_SIZE = 2;
+	private static final Deque<CharacterBalloon> pool = new ArrayDeque<>();
+
 	public static void updateDrawer(){
 		drawer = getDrawer("balloon.path-character");
+		for (CharacterBalloon balloon : pool)
+			balloon.dispose();
+		pool.clear();
+	}
+
+	/** Get balloon with text, closed balloon is reused if it has current shape. **/
+	static CharacterBalloon obtain(Character character, String text){
+		CharacterBalloon balloon = pool.poll();
+		if (balloon == null)
+			balloon = new CharacterBalloon();
+		balloon.reset(character, text);
+		return balloon;
 	}
 
 	protected Character character = null;
@@ -52,41 +71,20 @@ public class CharacterBalloon extends Balloon {
 
 	protected SymbolsAdder symbolsAdder;
 
-	CharacterBalloon(Character character, String text) {
+	// Shape balloon was created with, balloon is not reused after shape is changed
+	private final BalloonDrawer usedDrawer;
+
+	private CharacterBalloon() {
 		super();
-		instance = this;
 		setId("character-balloon");
 
-		positionMode = CharacterBalloon.PositionMode.valueOf(
-				Main.getProperties().getString("balloon_position_mode", positionMode.toString())
-		);
-		directionMode = CharacterBalloon.DirectionMode.valueOf(
-				Main.getProperties().getString("balloon_direction_mode", directionMode.toString())
-		);
-
-		Text label = new Text("");
-		label.setFont(defaultFont);
-		if (defaultFont != null) {
-			label.setFont(defaultFont);
-		} else {
-			label.setFont(LocalFont.defaultFont);
-		}
-
-		Integer animation_delay = Main.getProperties().getInteger("balloon.text-animation-delay", 50);
-		if (animation_delay > 0)
-			symbolsAdder = new SymbolsAdder(text, animation_delay);
-		else
-			label.setText(text);
-
-		content = label;
+		content = new Text("");
+		usedDrawer = drawer;
 		bubblePane = drawer.createBalloon(content);
 
 		getChildren().add(bubblePane);
 
-		label.setWrappingWidth(bubblePane.getContentWidth());
-
-		setBalloonScaleFactor(Main.getProperties().getFloat("balloon.scale_factor", 100));
-		setBalloonOpacity(Main.getProperties().getFloat("balloon.opacity", 100));
+		content.setWrappingWidth(bubblePane.getContentWidth());
 
 		setOnMousePressed(event -> {
 			lastClick = System.currentTimeMillis();
@@ -119,16 +117,45 @@ public class CharacterBalloon extends Balloon {
 			}
 		});
 
-		mouseEventNotificator
-				.setOnClickListener()
-				.setOnMovedListener()
-				.setOnScrollListener(event -> true);
+	}
 
+	/** Prepare balloon to show new text. **/
+	private void reset(Character character, String text) {
+		instance = this;
 		this.character = character;
+		lastClick = -1;
 
-		if (positionMode != PositionMode.ABSOLUTE) {
-			positionRelativeToDesktopSize = false;
+		positionMode = CharacterBalloon.PositionMode.valueOf(
+				Main.getProperties().getString("balloon_position_mode", PositionMode.AUTO.toString())
+		);
+		directionMode = CharacterBalloon.DirectionMode.valueOf(
+				Main.getProperties().getString("balloon_direction_mode", DirectionMode.STANDARD_DIRECTION.toString())
+		);
+		positionRelativeToDesktopSize = positionMode == PositionMode.ABSOLUTE;
+
+		if (defaultFont != null) {
+			content.setFont(defaultFont);
+		} else {
+			content.setFont(LocalFont.defaultFont);
+		}
+
+		// Text is measured once as a whole, so balloon keeps its size while text is typed
+		content.setText(text);
+		bubblePane.setContentHeight(content.getLayoutBounds().getHeight());
+
+		Integer animation_delay = Main.getProperties().getInteger("balloon.text-animation-delay", 50);
+		if (animation_delay > 0) {
+			content.setText("");
+			symbolsAdder = new SymbolsAdder(text, animation_delay);
 		}
+
+		setBalloonScaleFactor(Main.getProperties().getFloat("balloon.scale_factor", 100));
+		setBalloonOpacity(Main.getProperties().getFloat("balloon.opacity", 100));
+
+		mouseEventNotificator
+				.setOnClickListener()
+				.setOnMovedListener()
+				.setOnScrollListener(event -> true);
 	}
 
 	@Override
@@ -234,10 +261,19 @@ public class CharacterBalloon extends Balloon {
 
 	void close() {
 		setTimeout(0);
-		getChildren().removeAll();
+		if (symbolsAdder != null) {
+			symbolsAdder.stop();
+			symbolsAdder = null;
+		}
 		hide();
 		mouseEventNotificator.cleanListeners();
-		instance = null;
+		if (instance == this)
+			instance = null;
+
+		if (usedDrawer == drawer && pool.size() < POOL_SIZE && !pool.contains(this))
+			pool.push(this);
+		else
+			dispose();
 	}
 	
 	void setTimeout(int timeout) {
@@ -286,6 +322,7 @@ public class CharacterBalloon extends Balloon {
 		private final Timeline timeline;
 		private final String text;
 		private final int addCount;
+		private int shown = 0;
 
 		SymbolsAdder(String text, Integer delay) {
 			this.text = text;
@@ -300,27 +337,34 @@ public class CharacterBalloon extends Balloon {
 			timeline.play();
 		}
 
+		void stop() {
+			timeline.stop();
+		}
+
 		private boolean flag = false;
 		@Override
 		public void handle(javafx.event.ActionEvent actionEvent) {
 			int counter = addCount;
 			while (counter > 0) {
-				if(text.length() <= content.getText().length()){
+				if(text.length() <= shown){
 					timeline.stop();
-					return;
+					break;
 				}
-				char c = text.charAt(content.getText().length());
+				char c = text.charAt(shown);
 				if (c == '.') {
 					if (!flag) {
 						timeline.setCycleCount(timeline.getCycleCount() + 1);
 						flag = true;
-						return;
+						break;
 					}
 					flag = false;
 				}
-				content.setText(content.getText() + c);
+				shown++;
 				counter--;
 			}
+			// Text is changed once per tick, not once per symbol
+			if (counter < addCount)
+				content.setText(text.substring(0, shown));
 		}
 	}
 }
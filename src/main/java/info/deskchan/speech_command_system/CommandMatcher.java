@@ -0,0 +1,185 @@
+package info.deskchan.speech_command_system;
+
+import java.util.*;
+
+/** Shared matcher that finds commands which can match speech before their rules are parsed.
+ * Every rule is compiled to condition on its required words, and words of all rules are put into one table,
+ * so each word is compared with speech only once per request, no matter how many rules have it.
+ * Rule is fully parsed only if its condition holds. Condition is necessary for rule to match, but not sufficient,
+ * because it doesn't take order of words and words used by several parts of rule into account. **/
+class CommandMatcher {
+
+    private final Main.Command[] commands;
+    private final Condition[] conditions;
+
+    // All distinct words of rules, conditions refer to them by index
+    private final String[] words;
+
+    CommandMatcher(Main.Command[] commands){
+        this.commands = commands;
+        conditions = new Condition[commands.length];
+
+        Map<String, Integer> wordIds = new HashMap<>();
+        for (int i = 0; i < commands.length; i++) {
+            if (commands[i].rule == null) continue;
+            conditions[i] = commands[i].rule.getCondition();
+            conditions[i].assignIds(wordIds);
+        }
+
+        words = new String[wordIds.size()];
+        for (Map.Entry<String, Integer> entry : wordIds.entrySet())
+            words[entry.getValue()] = entry.getKey();
+    }
+
+    Main.Command[] getCommands(){
+        return commands;
+    }
+
+    /** Get commands that can match speech. Commands without rule are always selected.
+     * @param speech Words of speech
+     * @return Selected commands marked by their indices in {@link #getCommands()} **/
+    BitSet select(List<String> speech){
+        Speech tokens = new Speech(speech);
+
+        // 0 - not checked yet, 1 - found in speech, 2 - not found
+        byte[] found = new byte[words.length];
+        BitSet selected = new BitSet(commands.length);
+        for (int i = 0; i < commands.length; i++) {
+            if (conditions[i] == null || conditions[i].test(found, words, tokens))
+                selected.set(i);
+        }
+        return selected;
+    }
+
+    /** Words of speech together with their parts. Rule can split speech word to two parts when some rule word
+     * matches only its start or end, and other rule words can match these parts then. Parts are found only when
+     * some word is not found in speech itself, because it needs to compare every word of rules with speech. **/
+    private class Speech {
+        final List<String> words;
+        private List<String> parts = null;
+
+        Speech(List<String> words){
+            this.words = words;
+        }
+
+        List<String> getParts(){
+            if (parts != null) return parts;
+
+            List<String> tokens = new ArrayList<>(words);
+            for (int i = 0; i < tokens.size(); i++) {
+                String token = tokens.get(i);
+                for (String word : CommandMatcher.this.words) {
+                    if (subwordMatches(word, token)) {
+                        addPart(tokens, token.substring(0, word.length()));
+                        addPart(tokens, token.substring(word.length()));
+                    }
+                }
+            }
+            parts = tokens.subList(words.size(), tokens.size());
+            return parts;
+        }
+
+        private void addPart(List<String> tokens, String part){
+            if (part.length() > 0 && !tokens.contains(part)) tokens.add(part);
+        }
+    }
+
+    private static boolean subwordMatches(String word, String token){
+        if (token.length() <= word.length() * 1.3) return false;
+        return PhraseComparison.relative(token.substring(0, word.length()), word) * 0.95f > 0.85 ||
+               PhraseComparison.relative(token.substring(word.length()), word) * 0.95f > 0.85;
+    }
+
+    /** Check if word can be found in speech the same ways as rule parser does, see RegularRule.WordPhrase.
+     * Parts of speech words are checked last, so they are found only if word is not found in other ways. **/
+    private static boolean wordMatches(String word, Speech speech){
+        if (tokenMatches(word, speech.words)) return true;
+
+        // words divided by space
+        List<String> words = speech.words;
+        for (int i = 0, l = word.length() * 2; i < words.size(); i++) {
+            StringBuilder p = new StringBuilder(words.get(i));
+            for (int k = 1; i + k < words.size() && p.length() < l; k++) {
+                p.append(words.get(i + k));
+                if (PhraseComparison.relative(p.toString(), word) >= PhraseComparison.ACCURACY) return true;
+            }
+        }
+
+        return tokenMatches(word, speech.getParts());
+    }
+
+    private static boolean tokenMatches(String word, List<String> tokens){
+        for (String token : tokens) {
+            if (PhraseComparison.relative(word, token) > PhraseComparison.ACCURACY) return true;
+            if (subwordMatches(word, token)) return true;
+        }
+        return false;
+    }
+
+    /** Condition on words of speech: word is found, all or any of inner conditions hold, or always true. **/
+    static class Condition {
+        static final Condition TRUE = new Condition(null, null, false);
+
+        private final String word;
+        private int wordId = -1;
+        private final Condition[] children;
+        private final boolean all;
+
+        private Condition(String word, Condition[] children, boolean all){
+            this.word = word;
+            this.children = children;
+            this.all = all;
+        }
+
+        static Condition word(String word){
+            return new Condition(word, null, false);
+        }
+
+        static Condition all(List<Condition> children){
+            children.removeIf(child -> child == TRUE);
+            if (children.size() == 0) return TRUE;
+            if (children.size() == 1) return children.get(0);
+            return new Condition(null, children.toArray(new Condition[children.size()]), true);
+        }
+
+        static Condition any(List<Condition> children){
+            if (children.size() == 0 || children.contains(TRUE)) return TRUE;
+            if (children.size() == 1) return children.get(0);
+            return new Condition(null, children.toArray(new Condition[children.size()]), false);
+        }
+
+        private void assignIds(Map<String, Integer> ids){
+            if (word != null)
+                wordId = ids.computeIfAbsent(word, w -> ids.size());
+            else if (children != null)
+                for (Condition child : children) child.assignIds(ids);
+        }
+
+        private boolean test(byte[] found, String[] words, Speech speech){
+            if (this == TRUE) return true;
+
+            if (word != null) {
+                if (found[wordId] == 0)
+                    found[wordId] = wordMatches(words[wordId], speech) ? (byte) 1 : (byte) 2;
+                return found[wordId] == 1;
+            }
+
+            for (Condition child : children) {
+                if (child.test(found, words, speech) != all) return !all;
+            }
+            return all;
+        }
+
+        @Override
+        public String toString(){
+            if (this == TRUE) return "true";
+            if (word != null) return word;
+            StringBuilder sb = new StringBuilder("(");
+            for (int i = 0; i < children.length; i++) {
+                if (i > 0) sb.append(all ? " & " : " | ");
+                sb.append(children[i]);
+            }
+            return sb.append(")").toString();
+        }
+    }
+}
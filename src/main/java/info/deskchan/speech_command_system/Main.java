@@ -4,9 +4,11 @@ import info.deskchan.core.Plugin;
 import info.deskchan.core.PluginProxyInterface;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 public class Main implements Plugin {
     private static PluginProxyInterface pluginProxy;
@@ -19,6 +21,13 @@ public class Main implements Plugin {
         pluginProxy = newPluginProxy;
 
         log("loading speech to command module");
+
+        // Count of entries kept by every words comparison cache, caches are left as is if value is not positive
+        pluginProxy.getProperties().load();
+        pluginProxy.getProperties().putIfHasNot("comparisonCacheSize", PhraseComparison.DEFAULT_CACHE_LIMIT);
+        int comparisonCacheSize = pluginProxy.getProperties().getInteger("comparisonCacheSize", PhraseComparison.DEFAULT_CACHE_LIMIT);
+        if (comparisonCacheSize > 0)
+            PhraseComparison.setCacheLimit(comparisonCacheSize);
         pluginProxy.setConfigField("name", pluginProxy.getString("speech-plugin.name"));
         pluginProxy.setConfigField("link", "https://github.com/DeskChan/DeskChan/wiki/%D0%9E%D0%B1%D1%80%D0%B0%D0%B1%D0%BE%D1%82%D0%BA%D0%B0-%D1%80%D0%B5%D1%87%D0%B8");
 
@@ -118,16 +127,26 @@ public class Main implements Plugin {
             Map query = (Map) data;
             try {
                 String speech = query.get("speech").toString();
-                int index = -1, i=0;
+                List rules = (List) query.get("rules");
+
+                // Speech is split to words once, and rules are matched in parallel, because they don't share state
+                ArrayList<String> words = PhraseComparison.toClearWords(speech);
+                RegularRule.MatchResult[] results = new RegularRule.MatchResult[rules.size()];
+                IntStream.range(0, results.length).parallel().forEach(i -> {
+                    try {
+                        results[i] = RegularRule.create(rules.get(i).toString()).parse(speech, words);
+                    } catch (Exception e){
+                        throw new RuntimeException(e);
+                    }
+                });
+
+                int index = -1;
                 RegularRule.MatchResult bestResult = null;
-                for (Object ruletext : (List) query.get("rules")){
-                    RegularRule rule = RegularRule.create(ruletext.toString());
-                    RegularRule.MatchResult result = rule.parse(speech);
-                    if (result.better(bestResult)){
+                for (int i = 0; i < results.length; i++){
+                    if (results[i].better(bestResult)){
                         index = i;
-                        bestResult = result;
+                        bestResult = results[i];
                     }
-                    i++;
                 }
                 pluginProxy.sendMessage(sender, index);
             } catch (Exception e){
@@ -135,6 +154,18 @@ public class Main implements Plugin {
             }
         });
 
+        /* Get statistics of rules and matching results caches.
+         * Public message
+         * Params: None
+         * Returns: Map
+         *           rules: Map - statistics of compiled rules cache
+         *           matches: Map - statistics of matching results cache
+         *           comparison: Map - statistics of words comparison caches by their names
+         *         Every statistics map has size, limit, hits, misses, evictions and hitRate */
+        pluginProxy.addMessageListener("speech:get-cache-stats", (sender, tag, data) -> {
+            pluginProxy.sendMessage(sender, RegularRule.getCacheStats());
+        });
+
         pluginProxy.addMessageListener("recognition:get-words", (sender, tag, data) -> {
             pluginProxy.sendMessage(sender, Parsers.getWords());
         });
@@ -147,7 +178,6 @@ public class Main implements Plugin {
         final String tag;
         final RegularRule rule;
         final Object msgData;
-        RegularRule.MatchResult result;
 
         public Command(Map<String, Object> map){
             tag = (String) map.get("tag");
@@ -163,13 +193,10 @@ public class Main implements Plugin {
             }
             rule = rul;
         }
-
-        public boolean better(Command other){
-            return result.better(other != null ? other.result : null);
-        }
     }
 
     static Command[] commands;
+    static CommandMatcher matcher = new CommandMatcher(new Command[0]);
 
     /** Preparing command list for comparison. **/
     void updateCommandsList(List<Map<String,Object>> commandsInfo){
@@ -179,6 +206,7 @@ public class Main implements Plugin {
                 newCommands[i] = new Command(commandsInfo.get(i));
 
             commands = newCommands;
+            matcher = new CommandMatcher(newCommands);
         } catch (Exception e){
             Main.log("Error while updating links list");
         }
@@ -188,7 +216,19 @@ public class Main implements Plugin {
     boolean operateRequest(String text){
         ArrayList<String> words = PhraseComparison.toClearWords(text);
         Command best = null;
-        for(Command command : commands){
+        RegularRule.MatchResult bestResult = null;
+
+        // Only rules that can match speech are parsed, see CommandMatcher
+        CommandMatcher currentMatcher = matcher;
+        Command[] currentCommands = currentMatcher.getCommands();
+        BitSet candidates = currentMatcher.select(words);
+        for(int i = 0; i < currentCommands.length; i++){
+            Command command = currentCommands[i];
+            if(!candidates.get(i)) {
+                if(debugBuild)
+                    System.out.println(command.tag + " " + command.rule.getRule() + " skipped");
+                continue;
+            }
             if(command.rule == null) {
                 pluginProxy.sendMessage(command.tag, new HashMap<String, Object>() {{
                     put("text", words);
@@ -198,17 +238,19 @@ public class Main implements Plugin {
                 continue;
             }
 
-            command.result = command.rule.parse(text, words);
+            RegularRule.MatchResult result = command.rule.parse(text, words);
             if(debugBuild)
-               System.out.println(command.tag + " " + command.rule.getRule() + " " + command.result + " " + command.better(best));
-            if(command.better(best))
+               System.out.println(command.tag + " " + command.rule.getRule() + " " + result + " " + result.better(bestResult));
+            if(result.better(bestResult)) {
                 best = command;
+                bestResult = result;
+            }
         }
 
         if(best != null) {
             if(debugBuild)
-                System.out.println("best: " + best.tag + " " + best.result);
-            Map<String, Object> ret = best.rule.getArguments(text, best.result);
+                System.out.println("best: " + best.tag + " " + bestResult);
+            Map<String, Object> ret = best.rule.getArguments(text, bestResult);
             if(debugBuild)
                 System.out.println("1: " + ret);
             if(best.msgData != null) {
@@ -1,6 +1,6 @@
 package info.deskchan.speech_command_system;
 
-import info.deskchan.core_utils.LimitHashMap;
+import info.deskchan.core_utils.BoundedCache;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -29,7 +29,30 @@ public class PhraseComparison {
     public final static float ACCURACY = 0.65f;
 
     private final static String suffixes1 = "aeiouys", suffixes2 = "gmthg";
-    private static LimitHashMap<String, String> suffixCache = new LimitHashMap<>(500);
+
+    /** Default count of entries kept by every comparison cache. **/
+    public final static int DEFAULT_CACHE_LIMIT = 4096;
+
+    // Comparison is called for every pair of speech and rule words, possibly from several threads at once
+    private static volatile BoundedCache<String, String> suffixCache = new BoundedCache<>(DEFAULT_CACHE_LIMIT);
+    private static volatile BoundedCache<WordPair, Float> compareCache = new BoundedCache<>(DEFAULT_CACHE_LIMIT),
+                                                          suffixlessCompareCache = new BoundedCache<>(DEFAULT_CACHE_LIMIT);
+
+    /** Set count of entries kept by every comparison cache. Cached values are dropped. **/
+    public static void setCacheLimit(int limit){
+        suffixCache = new BoundedCache<>(limit);
+        compareCache = new BoundedCache<>(limit);
+        suffixlessCompareCache = new BoundedCache<>(limit);
+    }
+
+    /** Get statistics of comparison caches, see {@link BoundedCache#getStats()}. **/
+    public static Map<String, Object> getCacheStats(){
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("simplified", suffixCache.getStats());
+        stats.put("compare", compareCache.getStats());
+        stats.put("compareWithoutSuffixes", suffixlessCompareCache.getStats());
+        return stats;
+    }
 
     public static String removeSuffix(String word){
         int i, len = word.length()-1;
@@ -73,7 +96,7 @@ public class PhraseComparison {
     }
 
     private static class WordPair{
-        String one, two;
+        final String one, two;
         WordPair(String o, String t) {
             one = toLatin(o); two = toLatin(t);
         }
@@ -81,6 +104,10 @@ public class PhraseComparison {
         public boolean equals(Object other){
             return other instanceof WordPair && one.equals(((WordPair) other).one) && two.equals(((WordPair) other).two);
         }
+        @Override
+        public int hashCode(){
+            return one.hashCode() * 31 + two.hashCode();
+        }
         private String toLatin(String word){
             int pos;
             StringBuilder sb = new StringBuilder(word);
@@ -104,7 +131,6 @@ public class PhraseComparison {
             return "["+one+", "+two+"]";
         }
     }
-    private static LimitHashMap<WordPair, Float> compareCache = new LimitHashMap<>(500);
 
     public static int borderedAbsolute(String one, String two, int border){
         if(one.length() > border) one = one.substring(0, border);
@@ -125,7 +151,9 @@ public class PhraseComparison {
     }
     private static float complexLevenshtein(WordPair pair, boolean removeSuffixes){
         if(pair.one.equals(pair.two)) return 0;
-        Float repl = compareCache.get(pair);
+        // Result depends on suffixes removal, so pairs compared in both ways are kept separately
+        BoundedCache<WordPair, Float> cache = removeSuffixes ? suffixlessCompareCache : compareCache;
+        Float repl = cache.get(pair);
         if(repl != null) return repl;
 
         int l1 = Levenshtein(pair);
@@ -133,7 +161,7 @@ public class PhraseComparison {
 
 
         float l = (l1+l2)/2.0f;
-        compareCache.put(pair, l);
+        cache.put(pair, l);
         return l;
     }
     private static int Levenshtein(WordPair pair){
@@ -1,18 +1,20 @@
 package info.deskchan.speech_command_system;
 
-import info.deskchan.core_utils.LimitHashMap;
+import info.deskchan.core_utils.BoundedCache;
 
 import java.util.*;
 import java.util.regex.Pattern;
 
-/** Modified fuzzy regular expression turned into state machine. **/
+/** Modified fuzzy regular expression turned into state machine.
+ * Rule doesn't change after creation, state of every matching is kept in its own {@link ParseOptions},
+ * so the same rule can be matched by several threads at once. **/
 public class RegularRule{
 
     /** If you want to interpret rule with order dependence, so 'hello hi' will not be equal to 'hi hello'. **/
-    public boolean orderDependent = false;
+    public final boolean orderDependent;
 
     /** Hardly decrease matching percent if some words was not found in rule. **/
-    public boolean fullMatch = false;
+    public final boolean fullMatch = false;
 
     /** All information contains parse options for single matching operation. **/
     private class ParseOptions{
@@ -67,6 +69,11 @@ public class RegularRule{
             }
         }
         public UsersStats users;
+
+        /** State of levels by their ids: if level was parsed, and count of found alternatives for OR levels. **/
+        public final boolean[] parsed = new boolean[levelsCount];
+        public final int[] found = new int[levelsCount];
+
         public ParseOptions(String text, ArrayList<String> words, boolean orderDependent){
             users = new UsersStats(words);
             lastParsedIndex = -1;
@@ -75,7 +82,8 @@ public class RegularRule{
         }
     }
 
-    ParseOptions parseOptions;
+    // Count of levels in rule, every level gets its number as id
+    private int levelsCount = 0;
     private static class SearchResult{
         float result;
         int wordSequenceLength;
@@ -85,14 +93,17 @@ public class RegularRule{
     }
 
     protected abstract class PhraseLevel{
-        boolean parsed;
+        final int id = levelsCount++;
         public boolean required = true;
 
-        public abstract SearchResult parse();
+        public abstract SearchResult parse(ParseOptions options);
         PhraseLevelComplex parent;
-        public abstract boolean canBeRemoved();
-        public abstract void remove();
-        public abstract int getLastPosition(ParseOptions.UsersStats users);
+        public abstract boolean canBeRemoved(ParseOptions options);
+        public abstract void remove(ParseOptions options);
+
+        /** Get position of last word used by level.
+         * @param positions Positions of words taken by arguments, by argument ids **/
+        public abstract int getLastPosition(ParseOptions.UsersStats users, int[] positions);
     }
 
     protected abstract class PhraseLevelComplex extends PhraseLevel{
@@ -106,11 +117,11 @@ public class RegularRule{
         public PhraseLevel get(int index){
             return levels.get(index);
         }
-        public int getLastPosition(ParseOptions.UsersStats users){
+        public int getLastPosition(ParseOptions.UsersStats users, int[] positions){
             int position = -1;
             for(PhraseLevel level : levels)
-                if(level.getLastPosition(users) > position)
-                    position = level.getLastPosition(users);
+                if(level.getLastPosition(users, positions) > position)
+                    position = level.getLastPosition(users, positions);
             return position;
         }
         protected String printer(char separator){
@@ -128,15 +139,15 @@ public class RegularRule{
     }
 
     protected class PhraseLevelTypeAnd extends PhraseLevelComplex{
-        public SearchResult parse(){
+        public SearchResult parse(ParseOptions options){
             int length = 0;
             float currentResult = 0;
             SearchResult[] results = new SearchResult[levels.size()];
             for(int i = 0; i < levels.size(); i++){
-                results[i] = levels.get(i).parse();
+                results[i] = levels.get(i).parse(options);
 
                 if(results[i].result < 0.55 && levels.get(i).required){
-                    parsed = false;
+                    options.parsed[id] = false;
                     return new SearchResult(required ? 0f : 0.6f, 1);
                 }
                 length += results[i].wordSequenceLength;
@@ -145,53 +156,53 @@ public class RegularRule{
 
             if (length > 0) currentResult /= length;
             else currentResult = 0;
-            parsed = true;
+            options.parsed[id] = true;
             return new SearchResult(currentResult, length);
         }
-        public boolean canBeRemoved(){
-            if(!parsed || !required) return true;
+        public boolean canBeRemoved(ParseOptions options){
+            if(!options.parsed[id] || !required) return true;
             if(parent == null) return false;
-            return parent.canBeRemoved();
+            return parent.canBeRemoved(options);
         }
-        public void remove(){
-            if(!parsed || parent==null) return;
-            parsed=false;
-            parent.remove();
+        public void remove(ParseOptions options){
+            if(!options.parsed[id] || parent==null) return;
+            options.parsed[id]=false;
+            parent.remove(options);
         }
         @Override
         public String toString(){ return (required ? "" : "?") + printer(' '); }
     }
 
     protected class PhraseLevelTypeOr extends PhraseLevelComplex{
-        private int found;
-        public SearchResult parse(){
-            found = 0;
+        public SearchResult parse(ParseOptions options){
+            int found = 0;
             SearchResult max = new SearchResult(0, 0);
             SearchResult[] results = new SearchResult[levels.size()];
             for(int i=0; i<levels.size(); i++){
-                results[i] = levels.get(i).parse();
+                results[i] = levels.get(i).parse(options);
                 if(results[i].result<0.6) continue;
                 found++;
 
                 max.result = Math.max(results[i].result, max.result);
                 max.wordSequenceLength = Math.max(max.wordSequenceLength, results[i].wordSequenceLength);
             }
-            parsed = false;
+            options.found[id] = found;
+            options.parsed[id] = false;
             if(found == 0) return new SearchResult(0, 0);
-            parsed = true;
+            options.parsed[id] = true;
             return max;
         }
-        public boolean canBeRemoved(){
-            if(!parsed || !required) return true;
-            if(found>1) return true;
-            return parent!=null && parent.canBeRemoved();
+        public boolean canBeRemoved(ParseOptions options){
+            if(!options.parsed[id] || !required) return true;
+            if(options.found[id]>1) return true;
+            return parent!=null && parent.canBeRemoved(options);
         }
-        public void remove(){
-            if(!parsed) return;
-            found--;
-            if(found>0) return;
-            parsed = false;
-            parent.remove();
+        public void remove(ParseOptions options){
+            if(!options.parsed[id]) return;
+            options.found[id]--;
+            if(options.found[id]>0) return;
+            options.parsed[id] = false;
+            parent.remove(options);
         }
         @Override
         public String toString(){ return (required ? "" : "?")+printer('|'); }
@@ -201,10 +212,9 @@ public class RegularRule{
 
     private enum ArgumentType { Text , Word , List , Integer , Number , Date , Time , DateTime , RelativeDateTime }
     protected class Argument extends PhraseLevel{
-        public String name;
-        public ArgumentType type;
-        private PhraseLevel previous;
-        private int lastPos;
+        public final String name;
+        public final ArgumentType type;
+        private final PhraseLevel previous;
 
         private ArgumentType searchArgument(String search) throws Exception{
             for (ArgumentType each : ArgumentType.class.getEnumConstants())
@@ -224,18 +234,14 @@ public class RegularRule{
             this.previous = previous;
         }
 
-        public SearchResult parse(){
-            dropPosition();
+        public SearchResult parse(ParseOptions options){
             return new SearchResult(1, 1);
         }
 
-        public void dropPosition(){
-            lastPos = -1;
-        }
-
-        public Object localize(String text, MatchResult result){
+        public Object localize(String text, MatchResult result, int[] positions){
             Object value = null;
-            int i = getLastPosition(result.users) + 1;
+            int lastPos = -1;
+            int i = getLastPosition(result.users, positions) + 1;
             Words words = result.words;
             switch(type){
                 case Text: {
@@ -300,19 +306,20 @@ public class RegularRule{
                     lastPos = words.join(sub.used, i);
                 } break;
             }
+            positions[id] = lastPos;
             return value;
         }
-        public boolean canBeRemoved(){
+        public boolean canBeRemoved(ParseOptions options){
             return true;
         }
-        public void remove(){
-            parent.remove();
+        public void remove(ParseOptions options){
+            parent.remove(options);
         }
-        public int getLastPosition(ParseOptions.UsersStats users){
-            if(lastPos < 0){
-                return previous != null ? previous.getLastPosition(users) : 0;
+        public int getLastPosition(ParseOptions.UsersStats users, int[] positions){
+            if(positions[id] < 0){
+                return previous != null ? previous.getLastPosition(users, positions) : 0;
             }
-            return lastPos;
+            return positions[id];
         }
         @Override
         public String toString(){ return '{'+name+":"+type.toString()+"}"; }
@@ -325,8 +332,7 @@ public class RegularRule{
     private enum WordType { NONE, SIMILAR, SUBWORD, DIVIDED }
 
     protected class WordPhrase extends PhraseLevel{
-        private String word;
-        private int lastPosition;
+        private final String word;
 
         private WordPhrase(String word) throws Exception{
             for(int i=0; i<word.length(); i++)
@@ -334,24 +340,21 @@ public class RegularRule{
                     throw new Exception("Wrong word for rule: "+word, null);
 
             this.word = word;
-            parsed = true;
         }
 
-        public SearchResult parse(){
-            lastPosition = -1;
+        public SearchResult parse(ParseOptions options){
             WordType type = WordType.NONE;
             float max = 0;
             int leftBorder = -1, rightBorder = -1,
-                wordsCount = parseOptions.users.wordsCount();
+                wordsCount = options.users.wordsCount();
 
-            for(int i = parseOptions.lastParsedIndex + 1, k, l = word.length()*2; i < wordsCount; i++){
-                String matchingWord = parseOptions.users.getWord(i);
+            for(int i = options.lastParsedIndex + 1, k, l = word.length()*2; i < wordsCount; i++){
+                String matchingWord = options.users.getWord(i);
 
                 float result = PhraseComparison.relative(word, matchingWord);
                 if(result > 0.99){   // exact match
-                    parseOptions.users.addUser(i, this);
-                    lastPosition = i;
-                    if(parseOptions.orderDependent) parseOptions.lastParsedIndex = i;
+                    options.users.addUser(i, this);
+                    if(options.orderDependent) options.lastParsedIndex = i;
                     return new SearchResult(1, word.length());
                 }
 
@@ -377,10 +380,10 @@ public class RegularRule{
                         type = WordType.SUBWORD;
                     }
                 }
-                StringBuilder p = new StringBuilder(parseOptions.users.getWord(i));
+                StringBuilder p = new StringBuilder(options.users.getWord(i));
                 k = 1;
                 while(i+k < wordsCount && p.length() < l) {  // so, maybe a sequence of words matches
-                    p.append(parseOptions.users.getWord(i+k));
+                    p.append(options.users.getWord(i+k));
                     k++;
                     result = PhraseComparison.relative(p.toString(), word);
 
@@ -393,40 +396,38 @@ public class RegularRule{
                 }
             }
             if(type == WordType.NONE || max<PhraseComparison.ACCURACY){
-                parsed = false;
                 return new SearchResult(0, word.length());
             }
             switch(type){
                 case SIMILAR:
-                    parseOptions.users.addUser(leftBorder, this);
-                    return new SearchResult(max, parseOptions.users.getWord(leftBorder).length());
+                    options.users.addUser(leftBorder, this);
+                    return new SearchResult(max, options.users.getWord(leftBorder).length());
                 case SUBWORD:{
-                    parseOptions.users.split(leftBorder, word.length());
-                    if(parseOptions.orderDependent)
-                        parseOptions.lastParsedIndex = rightBorder;
-                    parseOptions.users.addUser(rightBorder, this);
-                    lastPosition = rightBorder;
+                    options.users.split(leftBorder, word.length());
+                    if(options.orderDependent)
+                        options.lastParsedIndex = rightBorder;
+                    options.users.addUser(rightBorder, this);
                     return new SearchResult(max, word.length());
                 }
                 case DIVIDED:{
                     StringBuilder p = new StringBuilder();
                     for(int a = leftBorder; a < rightBorder; a++){
-                        p.append(parseOptions.users.getWord(a));
-                        parseOptions.users.addUser(a, this);
+                        p.append(options.users.getWord(a));
+                        options.users.addUser(a, this);
                     }
                     return new SearchResult(max, p.length());
                 }
             }
             return new SearchResult(0, word.length());
         }
-        public boolean canBeRemoved(){
-            return parent.canBeRemoved();
+        public boolean canBeRemoved(ParseOptions options){
+            return parent.canBeRemoved(options);
         }
-        public int getLastPosition(ParseOptions.UsersStats users){
+        public int getLastPosition(ParseOptions.UsersStats users, int[] positions){
             return users.getWordUsedBy(this);
         }
-        public void remove(){
-            parent.remove();
+        public void remove(ParseOptions options){
+            parent.remove(options);
         }
         @Override
         public String toString(){
@@ -598,11 +599,19 @@ public class RegularRule{
     }
 
     public static RegularRule create(String phrase) throws Exception{
-        if (!hash.containsKey(phrase)) {
-            hash.put(phrase, new RegularRule(phrase));
-            if (debug) System.out.println("created new rule for '" + phrase + "'");
-        }
-        return hash.get(phrase);
+        return hash.get(phrase, text -> {
+            if (debug) System.out.println("created new rule for '" + text + "'");
+            return new RegularRule(text);
+        });
+    }
+
+    /** Get statistics of compiled rules cache, matching results cache and words comparison caches. **/
+    public static Map<String, Object> getCacheStats(){
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("rules", hash.getStats());
+        stats.put("matches", matchingHash.getStats());
+        stats.put("comparison", PhraseComparison.getCacheStats());
+        return stats;
     }
 
     private String textrule;
@@ -613,10 +622,9 @@ public class RegularRule{
 
     private RegularRule(String phrase) throws Exception{
 
-        if(phrase.charAt(0)=='!'){
-            orderDependent = true;
+        orderDependent = phrase.charAt(0)=='!';
+        if(orderDependent)
             phrase = phrase.substring(1);
-        }
         correctCheck(phrase);
 
         StringBuilder sb = new StringBuilder(phrase);
@@ -693,12 +701,13 @@ public class RegularRule{
 
     public MatchResult parse(String phrase, ArrayList<String> words){
         QueryPair query = new QueryPair(this, phrase);
-        if (matchingHash.containsKey(query))
-            return new MatchResult(matchingHash.get(query));
+        MatchResult cached = matchingHash.get(query);
+        if (cached != null)
+            return new MatchResult(cached);
 
         if (debug) System.out.println("new parse operation for '" + phrase + "'");
-        parseOptions = new ParseOptions(phrase, words, orderDependent);
-        SearchResult result = start.parse();
+        ParseOptions parseOptions = new ParseOptions(phrase, words, orderDependent);
+        SearchResult result = start.parse(parseOptions);
 
         // whole symbols count in text
         int mass = 0;
@@ -710,13 +719,13 @@ public class RegularRule{
             if(le > 1){
                 Iterator<PhraseLevel> it = parseOptions.users.getWordUsers(i).iterator();
                 while (it.hasNext()) {
-                    if (it.next().canBeRemoved()) {
+                    if (it.next().canBeRemoved(parseOptions)) {
                         it.remove();
                         break;
                     }
                 }
                 // cannot resolve
-                if(!start.parsed) {
+                if(!parseOptions.parsed[start.id]) {
                     matchingHash.put(query, new MatchResult());
                     return new MatchResult();
                 }
@@ -725,24 +734,51 @@ public class RegularRule{
         if(fullMatch && result.result > 0.5)
             result.result *= 0.5f + (float) result.wordSequenceLength / mass / 2.0f;
 
-        matchingHash.put(query, new MatchResult(result, parseOptions));
-        return new MatchResult(matchingHash.get(query));
+        MatchResult matchResult = new MatchResult(result, parseOptions);
+        matchingHash.put(query, matchResult);
+        return new MatchResult(matchResult);
     }
 
     public MatchResult parse(String phrase){
         return parse(phrase, PhraseComparison.toClearWords(phrase));
     }
 
+    /** Get condition on words of speech which holds for every speech matching this rule. **/
+    CommandMatcher.Condition getCondition(){
+        return getCondition(start);
+    }
+
+    // Condition of level result being high enough for its parent, see parse methods of levels
+    private CommandMatcher.Condition getCondition(PhraseLevel level){
+        if (level instanceof WordPhrase)
+            return CommandMatcher.Condition.word(((WordPhrase) level).word);
+
+        List<CommandMatcher.Condition> children = new ArrayList<>();
+        if (level instanceof PhraseLevelTypeAnd) {
+            // optional sequence gives enough result even if it's not found
+            if (!level.required) return CommandMatcher.Condition.TRUE;
+            for (PhraseLevel child : ((PhraseLevelTypeAnd) level).levels)
+                if (child.required) children.add(getCondition(child));
+            return CommandMatcher.Condition.all(children);
+        }
+        if (level instanceof PhraseLevelTypeOr) {
+            for (PhraseLevel child : ((PhraseLevelTypeOr) level).levels)
+                children.add(getCondition(child));
+            return CommandMatcher.Condition.any(children);
+        }
+        return CommandMatcher.Condition.TRUE;
+    }
+
     public Map<String,Object> getArguments(String text, MatchResult result){
         Map<String, Object> map = new HashMap<>();
         if(arguments.size() == 0)
             return map;
 
-        for(Argument element : arguments)
-            element.dropPosition();
+        int[] positions = new int[levelsCount];
+        Arrays.fill(positions, -1);
 
         for(Argument element : arguments){
-            Object argument = element.localize(text, result);
+            Object argument = element.localize(text, result, positions);
             if (argument != null)
                 map.put(element.name, argument);
         }
@@ -754,12 +790,13 @@ public class RegularRule{
         return start.toString();
     }
 
-    private static final LimitHashMap<String, RegularRule> hash = new LimitHashMap<>(100);
-    private static final LimitHashMap<QueryPair, MatchResult> matchingHash = new LimitHashMap<>(500);
+    // Rules of commands are kept by commands themselves, so cache holds rules created by other requests too
+    private static final BoundedCache<String, RegularRule> hash = new BoundedCache<>(1024);
+    private static final BoundedCache<QueryPair, MatchResult> matchingHash = new BoundedCache<>(4096);
 
     private static class QueryPair{
-        RegularRule rule;
-        String query;
+        final RegularRule rule;
+        final String query;
         QueryPair(RegularRule rule, String query){
             this.rule = rule;
             this.query = query;
@@ -771,7 +808,7 @@ public class RegularRule{
         }
         @Override
         public int hashCode(){
-            return rule.hashCode();
+            return rule.hashCode() * 31 + query.hashCode();
         }
     }
 
@@ -41,6 +41,20 @@ class Range {
 		end = en;
 	}
 
+	// Fields are kept as is, because range parsed from text may be empty or inverted
+	private Range(int st, int en, boolean unchecked) {
+		start = st;
+		end = en;
+	}
+
+	/** Restore range saved with {@link PhrasesSnapshot}.
+	 * Bounds are checked the same way range parsed from text is limited. **/
+	static Range restore(int st, int en) {
+		if (st < -CharacterFeatures.BORDER || en > CharacterFeatures.BORDER)
+			throw new IllegalArgumentException("wrong range for quote");
+		return new Range(st, en, true);
+	}
+
 	public boolean match(int value) {
 		return (value >= start && value <= end);
 	}
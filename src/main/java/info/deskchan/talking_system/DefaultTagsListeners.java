@@ -19,148 +19,250 @@ public class DefaultTagsListeners {
     }
 
     public static void parseForTagsRemove(String sender, String messagetag, Object data) {
-        checkCondition(sender, data, (quote) -> {
+        checkConditions(sender, data, TagsConditions::rejectsOS);
+    }
+
+    private static final List<String> DAYS = Arrays.asList(
+            "monday", "tuesday", "wednesday", "thursday", "friday", "saturday", "sunday"
+    );
+    private static final List<String> MONTHS = Arrays.asList(
+            "january", "february", "march", "april", "may", "june", "july", "august", "september", "october", "november", "december"
+    );
+
+    public static void parseForTagsReject(String sender, String messagetag, Object data){
+        final Clock clock = new Clock();
+        checkConditions(sender, data, conditions -> conditions.rejects(clock));
+    }
+
+    /** Answer to "talk:reject-quote" or "talk:remove-quote" with positions of quotes matching condition. **/
+    public static void checkCondition(String answerTag, Object data, Condition condition){
+        List<Map<String,Object>> list = (List) data;
+        BitSet rejected = new BitSet();
+
+        if(list != null){
+            for (int i = 0; i < list.size(); i++) {
+                if (condition.match(list.get(i)))
+                    rejected.set(i);
+            }
+        }
+
+        Main.getPluginProxy().sendMessage(answerTag, rejected);
+    }
+
+    /** Same as {@link #checkCondition(String, Object, Condition)}, but checks conditions compiled from tags of quotes.
+     * Conditions of phrases are compiled once and cached in phrases, conditions of other quotes are compiled every time. **/
+    private static void checkConditions(String answerTag, Object data, ConditionsCheck check){
+        BitSet rejected = new BitSet();
+
+        if (data instanceof PhraseCandidates) {
+            PhraseCandidates candidates = (PhraseCandidates) data;
+            for (int i = 0; i < candidates.size(); i++) {
+                if (check.rejects(candidates.getPhrase(i).getConditions()))
+                    rejected.set(i);
+            }
+        } else if (data != null) {
+            List<Map<String,Object>> list = (List) data;
+            for (int i = 0; i < list.size(); i++) {
+                if (check.rejects(new TagsConditions(list.get(i))))
+                    rejected.set(i);
+            }
+        }
+
+        Main.getPluginProxy().sendMessage(answerTag, rejected);
+    }
+
+    interface Condition{
+        boolean match(Map<String, Object> quote);
+    }
+
+    interface ConditionsCheck{
+        boolean rejects(TagsConditions conditions);
+    }
+
+    /** Current time, taken once for all quotes checked by one request. **/
+    static class Clock {
+        final int hour, minute, day, dayOfWeek, month;
+
+        // null if time of last conversation is unknown
+        final Long sinceLastConversation;
+        final boolean sleepTime;
+
+        Clock() {
+            Calendar cal = Calendar.getInstance();
+            hour = cal.get(Calendar.HOUR_OF_DAY);
+            minute = cal.get(Calendar.MINUTE);
+            day = cal.get(Calendar.DAY_OF_MONTH) - 1;
+            int dayIndex = cal.get(Calendar.DAY_OF_WEEK);
+            dayOfWeek = (dayIndex == 1 ? 7 : dayIndex - 1) - 1;
+            month = cal.get(Calendar.MONTH);
+
+            Long since;
+            try {
+                Instant lastConversation = Instant.ofEpochMilli(Main.getProperties().getLong("lastConversation", 0));
+                since = Duration.between(lastConversation, Instant.now()).toMinutes();
+            } catch (Exception e) {
+                since = null;
+            }
+            sinceLastConversation = since;
+
+            boolean sleep;
+            try {
+                Calendar left = (Calendar) cal.clone();
+                while(left.get(Calendar.HOUR_OF_DAY) != 22) left.add(Calendar.HOUR_OF_DAY, -1);
+                Calendar right = (Calendar) left.clone();
+                while(right.get(Calendar.HOUR_OF_DAY) != 4) right.add(Calendar.HOUR_OF_DAY, 1);
+                right.set(Calendar.MINUTE, 0);
+                sleep = cal.getTimeInMillis() >= left.getTimeInMillis() &&
+                        cal.getTimeInMillis() <= right.getTimeInMillis();
+            } catch (Exception e) {
+                sleep = true;
+            }
+            sleepTime = sleep;
+        }
+    }
+
+    /** Conditions from tags of quote compiled to bitmasks of allowed values.
+     * Quote is checked with few bit operations and without parsing its tags. **/
+    static class TagsConditions {
+
+        private static final int HOUR = 1, MINUTE = 2, DAY = 4, DAY_OF_WEEK = 8, MONTH = 16,
+                LAST_CONVERSATION = 32, SLEEP_TIME = 64;
+
+        // flags of conditions that quote has
+        private int present = 0;
+
+        private long hours, minutes;
+        private int days, daysOfWeek, months;
+        private int conversationFrom = 0, conversationTo = -1;
+        private boolean wrongOS = false;
+
+        TagsConditions(Map<String, Object> quote) {
             Collection<String> tag;
 
             /// operation system
             try {
                 tag = (Collection) quote.get("os");
                 if (tag != null && tag.size() > 0) {
-                    if (OS == null) return true;
-
                     boolean found = false;
                     for (String arg : tag) {
                         if (arg.charAt(0) == '"' && arg.charAt(arg.length() - 1) == '"')
                             arg = arg.substring(1, arg.length() - 1);
                         if (arg.toLowerCase().equals(OS)) found = true;
                     }
-                    if (!found) return true;
+                    wrongOS = !found;
                 }
             } catch(Exception e){ Main.log(e); }
 
-            return false;
-        });
-    }
-
-    private static final List<String> DAYS = Arrays.asList(
-            "monday", "tuesday", "wednesday", "thursday", "friday", "saturday", "sunday"
-    );
-    private static final List<String> MONTHS = Arrays.asList(
-            "january", "february", "march", "april", "may", "june", "july", "august", "september", "october", "november", "december"
-    );
-
-    public static void parseForTagsReject(String sender, String messagetag, Object data){
-        final Calendar cal = Calendar.getInstance();
-        cal.setTime(new Date());
-
-        checkCondition(sender, data, (quote) -> {
-            Collection<String> tag;
-
-            // first five conditions filling TextBooleanSet
             // example: listOf("1-3", "5-6") -> [false, true, true, true, false, true, true, false...]
             // if we have 'false' at needed index, it means we cannot use quote at current time
 
             /// possibleHour
             try {
                 tag = (Collection) quote.get("possibleHour");
-                if (tag != null && !new TextBooleanSet(24, tag).get(cal.get(Calendar.HOUR_OF_DAY))) return true;
+                if (tag != null) {
+                    hours = toMask(new TextBooleanSet(24, tag));
+                    present |= HOUR;
+                }
             } catch(Exception e){ Main.log(e); }
 
             /// possibleMinute
             try {
                 tag = (Collection) quote.get("possibleMinute");
-                if(tag != null && !new TextBooleanSet(60, tag).get(cal.get(Calendar.MINUTE))) return true;
+                if (tag != null) {
+                    minutes = toMask(new TextBooleanSet(60, tag));
+                    present |= MINUTE;
+                }
             } catch(Exception e){ Main.log(e); }
 
             /// possibleDay
             try {
                 tag = (Collection) quote.get("possibleDay");
-                if(tag != null && !new TextBooleanSet(31, tag).get(cal.get(Calendar.DAY_OF_MONTH) - 1)) return true;
+                if (tag != null) {
+                    days = (int) toMask(new TextBooleanSet(31, tag));
+                    present |= DAY;
+                }
             } catch(Exception e){ Main.log(e); }
 
             /// possibleDayOfWeek
             try {
                 tag = (Collection) quote.get("possibleDayOfWeek");
-
-                if(tag != null){
-                    int dayIndex = cal.get(Calendar.DAY_OF_WEEK);
-                    dayIndex = (dayIndex == 1 ? 7 : dayIndex - 1) - 1;
-
+                if (tag != null) {
                     TextBooleanSet set = new TextBooleanSet(7);
                     for(String arg : tag){
                         if (!DAYS.contains(arg.toLowerCase())) set.fillFromString(arg);
                     }
-                    if(!set.get(dayIndex)) return true;
+                    daysOfWeek = (int) toMask(set);
+                    present |= DAY_OF_WEEK;
                 }
-            } catch(Exception e){ Main.log("4"); Main.log(e); }
+            } catch(Exception e){ Main.log(e); }
 
             /// possibleMonth
             try {
                 tag = (Collection) quote.get("possibleMonth");
-
-                if(tag != null){
+                if (tag != null) {
                     TextBooleanSet set = new TextBooleanSet(12);
                     for(String arg : tag){
                         if (!MONTHS.contains(arg.toLowerCase())) set.fillFromString(arg);
                     }
-                    if(!set.get(cal.get(Calendar.MONTH))) return true;
+                    months = (int) toMask(set);
+                    present |= MONTH;
                 }
-            } catch(Exception e){ Main.log("5"); Main.log(e); }
+            } catch(Exception e){ Main.log(e); }
 
             /// lastConversation
             try {
                 tag = (Collection) quote.get("lastConversation");
-
                 if (tag != null && tag.size() > 0) {
-                    int left = 0, right = -1;
                     try {
                         String text = tag.iterator().next();
                         if (text.contains("-")) {
                             String[] di = text.split("-");
-                            left = Integer.valueOf(di[0]);
-                            right = Integer.valueOf(di[1]);
-                        } else left = Integer.parseInt(text);
+                            conversationFrom = Integer.valueOf(di[0]);
+                            conversationTo = Integer.valueOf(di[1]);
+                        } else conversationFrom = Integer.parseInt(text);
                     } catch (Exception e) { }
-
-                    Instant lastConversation = Instant.ofEpochMilli(Main.getProperties().getLong("lastConversation", 0));
-                    long length = Duration.between(lastConversation, Instant.now()).toMinutes();
-                    if(length < left || length >= right) return true;
+                    present |= LAST_CONVERSATION;
                 }
             } catch(Exception e){ }
 
             /// sleepTime
-            try {
-                if (quote.containsKey("sleepTime")) {
-                    Calendar left = Calendar.getInstance();
-                    while(left.get(Calendar.HOUR_OF_DAY) != 22) left.add(Calendar.HOUR_OF_DAY, -1);
-                    Calendar right = (Calendar) left.clone();
-                    while(right.get(Calendar.HOUR_OF_DAY) != 4) right.add(Calendar.HOUR_OF_DAY, 1);
-                    right.set(Calendar.MINUTE, 0);
-                    Calendar current = Calendar.getInstance();
-                    if(current.getTimeInMillis() < left.getTimeInMillis() ||
-                       current.getTimeInMillis() > right.getTimeInMillis()) return true;
-                }
-            } catch(Exception e){ }
-            return false;
-        });
-    }
+            if (quote.containsKey("sleepTime"))
+                present |= SLEEP_TIME;
+        }
 
-    public static void checkCondition(String answerTag, Object data, Condition condition){
-        ArrayList<Map<String,Object>> list = (ArrayList) data;
-        ArrayList<Map<String,Object>> quotes_list = new ArrayList<>();
+        private static long toMask(TextBooleanSet set) {
+            long mask = 0;
+            for (int i = 0; i < set.set.length; i++)
+                if (set.get(i)) mask |= 1L << i;
+            return mask;
+        }
 
-        if(list != null){
-            for (Map<String, Object> entry : list) {
-                if (condition.match(entry))
-                    quotes_list.add(entry);
-            }
+        private boolean has(int condition) {
+            return (present & condition) != 0;
         }
 
-        Main.getPluginProxy().sendMessage(answerTag, quotes_list);
-    }
+        /** Check if quote cannot be used on current operating system. **/
+        boolean rejectsOS() {
+            return wrongOS;
+        }
 
-    interface Condition{
-        boolean match(Map<String, Object> quote);
+        /** Check if quote cannot be used at given time. **/
+        boolean rejects(Clock clock) {
+            if (present == 0) return false;
+
+            if (has(HOUR) && (hours & (1L << clock.hour)) == 0) return true;
+            if (has(MINUTE) && (minutes & (1L << clock.minute)) == 0) return true;
+            if (has(DAY) && (days & (1 << clock.day)) == 0) return true;
+            if (has(DAY_OF_WEEK) && (daysOfWeek & (1 << clock.dayOfWeek)) == 0) return true;
+            if (has(MONTH) && (months & (1 << clock.month)) == 0) return true;
+
+            if (has(LAST_CONVERSATION) && clock.sinceLastConversation != null) {
+                long length = clock.sinceLastConversation;
+                if (length < conversationFrom || length >= conversationTo) return true;
+            }
+
+            return has(SLEEP_TIME) && !clock.sleepTime;
+        }
     }
 }
 
@@ -2,159 +2,306 @@ package info.deskchan.talking_system;
 
 import info.deskchan.core_utils.TextOperations;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.List;
 
+/** Counts of meanings taught for every word.
+ * Model is kept in file mapped to memory, so it is not read at start and every {@link #teach(String, String)} changes
+ * only records of words it touches. File is hash table of words, every record has counts of word meanings and
+ * their normalized values, which are updated together with counts, so analysis doesn't compute or allocate anything.
+ * Table is rebuilt with bigger size when it becomes half full or when new meaning doesn't fit into records. **/
 public class MeaningExtractor {
-    private ArrayList<String> meaningNames;
-    private HashMap<String,HashMap<Integer,Integer>> meanings;
-    private HashMap<Integer,Float> normalizeMeaningTable(HashMap<Integer,Integer> table){
-        float sum=0;
-        for(HashMap.Entry<Integer,Integer> entry : table.entrySet())
-            sum+=entry.getValue();
-        HashMap<Integer,Float> normalized=new HashMap<>();
-        for(HashMap.Entry<Integer,Integer> entry : table.entrySet())
-            normalized.put(entry.getKey(),entry.getValue()/sum);
-        return normalized;
-    }
+
+    private static final int MAGIC = 0x44434d45;
+    private static final int VERSION = 1;
+
+    // Header: magic, version, capacity, meanings capacity, words count, meanings count, heap end, reserved
+    private static final int HEADER_SIZE = 32;
+    private static final int CAPACITY = 8, MEANINGS_CAPACITY = 12, WORDS = 16, MEANINGS = 20, HEAP_END = 24;
+
+    private static final int INITIAL_CAPACITY = 1024, INITIAL_MEANINGS_CAPACITY = 16;
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+
+    private int capacity, meaningsCapacity, slotSize, tableOffset;
+
+    // Names are few and needed on every analysis, so they are kept in memory too
+    private ArrayList<String> meaningNames = new ArrayList<>();
+    private float[] phraseMeanings = new float[0];
+
     public MeaningExtractor(){
-        meaningNames=new ArrayList<>();
-        meanings=new HashMap<>();
+        this(Main.getDataDirPath().resolve("meanings.model"));
+    }
+
+    MeaningExtractor(Path file){
+        this.file = file;
         load();
     }
-    public String analyze(String phrase){
-        ArrayList<String> words= TextOperations.simplifyWords(TextOperations.extractWordsLower(phrase));
-        float max=0;
-        int index=-1;
-        int count=0;
-        HashMap<Integer,Float> phrase_meanings=new HashMap<>();
-        HashMap<Integer,Integer> mp;
-        for(String word : words){
-            mp=meanings.getOrDefault(word,null);
-            if(mp==null || mp.size()==0) continue;
+
+    public synchronized String analyze(String phrase){
+        if (buffer == null) return null;
+
+        List<String> words = TextOperations.simplifyWords(TextOperations.extractWordsLower(phrase));
+        float max = 0;
+        int index = -1;
+        int count = 0;
+        float[] scores = phraseMeanings;
+        Arrays.fill(scores, 0);
+
+        for (String word : words){
+            int slot = find(word, hash(word));
+            if (slot < 0 || buffer.getInt(slot + 8) == 0) continue;
             count++;
-            for(HashMap.Entry<Integer,Float> entry : normalizeMeaningTable(mp).entrySet()){
-                float f=phrase_meanings.getOrDefault(entry.getKey(),0f)+entry.getValue();
-                phrase_meanings.put(entry.getKey(),f);
-                if(f>max) {
+
+            int normalized = slot + 12 + 4 * meaningsCapacity;
+            for (int i = 0; i < meaningNames.size(); i++){
+                if (buffer.getInt(slot + 12 + 4 * i) == 0) continue;
+                float f = scores[i] + buffer.getFloat(normalized + 4 * i);
+                scores[i] = f;
+                if (f > max){
                     max = f;
-                    index = entry.getKey();
+                    index = i;
                 }
             }
         }
-        if(index<0 || max/count<0.5) return null;
+        if (index < 0 || max / count < 0.5) return null;
         return meaningNames.get(index);
     }
-    public void teach(String phrase,String meaning){
-        ArrayList<String> words=TextOperations.simplifyWords(TextOperations.extractWordsLower(phrase));
-        meaning=meaning.toUpperCase();
-        int meanIndex=meaningNames.indexOf(meaning);
-        if(meanIndex<0){
-            meanIndex=meaningNames.size();
-            meaningNames.add(meaning);
-        }
-        HashMap<Integer,Integer> mp;
-        for(String word : words){
-            mp=meanings.getOrDefault(word,null);
-            if(mp==null){
-                mp=new HashMap<Integer,Integer>();
-                meanings.put(word,mp);
+
+    public synchronized void teach(String phrase, String meaning){
+        if (buffer == null) return;
+
+        List<String> words = TextOperations.simplifyWords(TextOperations.extractWordsLower(phrase));
+        meaning = meaning.toUpperCase();
+        try {
+            int meanIndex = meaningNames.indexOf(meaning);
+            if (meanIndex < 0){
+                if (meaningNames.size() == meaningsCapacity)
+                    rebuild(capacity, meaningsCapacity * 2);
+                meanIndex = meaningNames.size();
+                int reference = putString(meaning);
+                buffer.putInt(HEADER_SIZE + 4 * meanIndex, reference);
+                meaningNames.add(meaning);
+                buffer.putInt(MEANINGS, meaningNames.size());
             }
-            int a=mp.getOrDefault(meanIndex,0)+1;
-            mp.put(meanIndex,a);
+
+            for (String word : words){
+                int hash = hash(word);
+                int slot = find(word, hash);
+                if (slot < 0){
+                    if ((buffer.getInt(WORDS) + 1) * 2 > capacity)
+                        rebuild(capacity * 2, meaningsCapacity);
+                    slot = insert(word, hash);
+                }
+                increment(slot, meanIndex, 1);
+            }
+        } catch (IOException e){
+            Main.log("Error while writing meanings file: " + e);
         }
     }
-    public void print(){
-        for(Map.Entry<String,HashMap<Integer,Integer>> word : meanings.entrySet()){
-            System.out.println(word.getKey());
-            for(Map.Entry<Integer,Integer> meaning : word.getValue().entrySet()){
-                System.out.println("  "+meaningNames.get(meaning.getKey())+" "+meaning.getValue());
+
+    public synchronized void print(){
+        if (buffer == null) return;
+
+        for (int i = 0; i < capacity; i++){
+            int slot = tableOffset + i * slotSize;
+            if (buffer.getInt(slot + 4) == 0) continue;
+
+            System.out.println(getString(buffer.getInt(slot + 4)));
+            for (int j = 0; j < meaningNames.size(); j++){
+                int count = buffer.getInt(slot + 12 + 4 * j);
+                if (count > 0) System.out.println("  " + meaningNames.get(j) + " " + count);
             }
         }
     }
-    public void save(){
-        FileWriter writer=null;
-        try {
-            writer=new FileWriter(Main.getDataDirPath().resolve("meanings").toFile());
-        } catch(Exception e){
-            Main.log("Error while locate space for meanings file");
-            return;
-        }
-        BufferedWriter out=new BufferedWriter(writer);
+
+    /** Write all changes of model to disk. **/
+    public synchronized void save(){
+        if (buffer != null) buffer.force();
+    }
+
+    /** Map model file to memory, creating empty model if file doesn't exist or is broken. **/
+    public synchronized void load(){
         try {
-            for(String name : meaningNames)
-                out.write(name+"\n");
-            out.write("\n");
-            for(HashMap.Entry<String,HashMap<Integer,Integer>> entry : meanings.entrySet()) {
-                if(entry.getValue()==null || entry.getValue().entrySet().size()==0) continue;
-                out.write(entry.getKey());
-                for(HashMap.Entry<Integer,Integer> mean : entry.getValue().entrySet()) {
-                    out.write(" "+entry.getKey()+" "+entry.getValue());
-                }
-                out.write("\n");
+            if (channel != null) channel.close();
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            meaningNames = new ArrayList<>();
+
+            if (channel.size() < HEADER_SIZE){
+                create(INITIAL_CAPACITY, INITIAL_MEANINGS_CAPACITY);
+                buffer.putInt(0, MAGIC);
+                return;
+            }
+
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (!isValid(channel.size())){
+                Main.log("Meanings file is broken, creating new one");
+                create(INITIAL_CAPACITY, INITIAL_MEANINGS_CAPACITY);
+                buffer.putInt(0, MAGIC);
+                return;
             }
-            out.flush();
-            out.close();
-        } catch(Exception e){
-            Main.log("Error while writing meanings file");
-            return;
+            setLayout(buffer.getInt(CAPACITY), buffer.getInt(MEANINGS_CAPACITY));
+            for (int i = 0, count = buffer.getInt(MEANINGS); i < count; i++)
+                meaningNames.add(getString(buffer.getInt(HEADER_SIZE + 4 * i)));
+        } catch (Exception e){
+            Main.log("Error while loading meanings file: " + e);
+            buffer = null;
         }
     }
-    public void load(){
-        FileReader reader=null;
-        try {
-            reader=new FileReader(Main.getDataDirPath().resolve("meanings").toFile());
-        } catch(Exception e){
-            Main.log("Error while locating meanings file");
-            return;
+
+    /** Check header of mapped file. Probing of table never ends if capacity is not power of two or table is full,
+     * so such files are treated as broken. **/
+    private boolean isValid(long size){
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) return false;
+
+        int capacity = buffer.getInt(CAPACITY), meaningsCapacity = buffer.getInt(MEANINGS_CAPACITY);
+        if (!isPowerOfTwo(capacity) || !isPowerOfTwo(meaningsCapacity)) return false;
+
+        int words = buffer.getInt(WORDS), meanings = buffer.getInt(MEANINGS);
+        if (words < 0 || words >= capacity || meanings < 0 || meanings > meaningsCapacity) return false;
+
+        long heapStart = HEADER_SIZE + 4L * meaningsCapacity + (long) capacity * (12 + 8L * meaningsCapacity);
+        int heapEnd = buffer.getInt(HEAP_END);
+        return heapStart <= heapEnd && heapEnd <= size;
+    }
+
+    private static boolean isPowerOfTwo(int value){
+        return value > 0 && (value & (value - 1)) == 0;
+    }
+
+    private void setLayout(int capacity, int meaningsCapacity){
+        this.capacity = capacity;
+        this.meaningsCapacity = meaningsCapacity;
+        // Slot: hash, word reference, total count, counts by meaning, normalized counts by meaning
+        slotSize = 12 + 8 * meaningsCapacity;
+        tableOffset = HEADER_SIZE + 4 * meaningsCapacity;
+        phraseMeanings = new float[meaningsCapacity];
+    }
+
+    /** Clear file and write header of empty table. File is not marked valid here, caller writes magic number
+     * after it has filled table, so table that was not filled completely is treated as broken on next load. **/
+    private void create(int capacity, int meaningsCapacity) throws IOException {
+        setLayout(capacity, meaningsCapacity);
+        int heapStart = tableOffset + capacity * slotSize;
+
+        map(heapStart + 4096);
+        for (int i = 0; i < heapStart; i += 4) buffer.putInt(i, 0);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(CAPACITY, capacity);
+        buffer.putInt(MEANINGS_CAPACITY, meaningsCapacity);
+        buffer.putInt(HEAP_END, heapStart);
+    }
+
+    private void map(long size) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /** Copy model to table of new size. Old table is read to memory first, because new one takes place of it in the same file. **/
+    private void rebuild(int newCapacity, int newMeaningsCapacity) throws IOException {
+        List<String> words = new ArrayList<>();
+        List<int[]> counts = new ArrayList<>();
+        for (int i = 0; i < capacity; i++){
+            int slot = tableOffset + i * slotSize;
+            if (buffer.getInt(slot + 4) == 0) continue;
+            words.add(getString(buffer.getInt(slot + 4)));
+            int[] wordCounts = new int[meaningNames.size()];
+            for (int j = 0; j < wordCounts.length; j++)
+                wordCounts[j] = buffer.getInt(slot + 12 + 4 * j);
+            counts.add(wordCounts);
         }
-        BufferedReader out=new BufferedReader(reader);
-        try {
-            String line;
-            while((line=out.readLine())!=null){
-                if(line.length()<1) break;
-                meaningNames.add(line);
-            }
-            String[] parts;
-            HashMap<Integer,Integer> map;
-            while((line=out.readLine())!=null){
-                if(line.length()<1) break;
-                parts=line.split(" ");
-                map=new HashMap<>();
-                for(int i=0;i<parts.length-2;i+=2){
-                    int i1=-1,i2=-1;
-                    do{
-                        i++;
-                        try{
-                            i1=Integer.parseInt(parts[i]);
-                        } catch(Exception e){ continue; }
-                        break;
-                    } while(i<parts.length-1);
-                    if(i1<0) break;
-                    do{
-                        i++;
-                        try{
-                            i2=Integer.parseInt(parts[i]);
-                        } catch(Exception e){ continue; }
-                        break;
-                    } while(i<parts.length);
-                    if(i2<0) break;
-                    map.put(i1,i2);
-                }
-                if(map.size()>0){
-                    meanings.put(parts[0],map);
-                }
-            }
-            out.close();
-        } catch(Exception e){
-            Main.log("Error while writing meanings file");
-            return;
+
+        buffer.putInt(0, 0);
+        create(newCapacity, newMeaningsCapacity);
+        for (int i = 0; i < meaningNames.size(); i++){
+            int reference = putString(meaningNames.get(i));
+            buffer.putInt(HEADER_SIZE + 4 * i, reference);
         }
+        buffer.putInt(MEANINGS, meaningNames.size());
+
+        for (int i = 0; i < words.size(); i++){
+            String word = words.get(i);
+            int slot = insert(word, hash(word));
+            int[] wordCounts = counts.get(i);
+            for (int j = 0; j < wordCounts.length; j++)
+                if (wordCounts[j] > 0) increment(slot, j, wordCounts[j]);
+        }
+        buffer.putInt(0, MAGIC);
+    }
+
+    private static int hash(String word){
+        int h = word.hashCode();
+        // Table index is taken from low bits, so high bits are mixed into them
+        return h ^ (h >>> 16);
+    }
+
+    /** Get offset of word record, or -1 if model doesn't have word. **/
+    private int find(String word, int hash){
+        int mask = capacity - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask){
+            int slot = tableOffset + i * slotSize;
+            int reference = buffer.getInt(slot + 4);
+            if (reference == 0) return -1;
+            if (buffer.getInt(slot) == hash && stringEquals(reference, word)) return slot;
+        }
+    }
+
+    private int insert(String word, int hash) throws IOException {
+        int mask = capacity - 1;
+        int i = hash & mask;
+        while (buffer.getInt(tableOffset + i * slotSize + 4) != 0)
+            i = (i + 1) & mask;
+
+        int slot = tableOffset + i * slotSize;
+        int reference = putString(word);
+        buffer.putInt(slot, hash);
+        buffer.putInt(slot + 4, reference);
+        buffer.putInt(WORDS, buffer.getInt(WORDS) + 1);
+        return slot;
+    }
+
+    private void increment(int slot, int meaning, int count){
+        int total = buffer.getInt(slot + 8) + count;
+        buffer.putInt(slot + 8, total);
+        int counts = slot + 12, normalized = counts + 4 * meaningsCapacity;
+        buffer.putInt(counts + 4 * meaning, buffer.getInt(counts + 4 * meaning) + count);
+        for (int i = 0; i < meaningNames.size(); i++)
+            buffer.putFloat(normalized + 4 * i, buffer.getInt(counts + 4 * i) / (float) total);
+    }
+
+    // Strings are kept as length and UTF-16 chars, so they are compared with String without decoding
+    private int putString(String text) throws IOException {
+        int reference = buffer.getInt(HEAP_END);
+        int end = reference + 4 + 2 * text.length();
+        if (end > buffer.capacity())
+            map(Math.max(end, (long) buffer.capacity() * 2));
+
+        buffer.putInt(reference, text.length());
+        for (int i = 0; i < text.length(); i++)
+            buffer.putChar(reference + 4 + 2 * i, text.charAt(i));
+        buffer.putInt(HEAP_END, end);
+        return reference;
+    }
+
+    private String getString(int reference){
+        char[] chars = new char[buffer.getInt(reference)];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = buffer.getChar(reference + 4 + 2 * i);
+        return new String(chars);
+    }
+
+    private boolean stringEquals(int reference, String text){
+        if (buffer.getInt(reference) != text.length()) return false;
+        for (int i = 0; i < text.length(); i++)
+            if (buffer.getChar(reference + 4 + 2 * i) != text.charAt(i)) return false;
+        return true;
     }
 
-}
\ No newline at end of file
+}
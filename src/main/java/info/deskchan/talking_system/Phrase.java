@@ -7,6 +7,9 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.util.*;
 
 
@@ -43,6 +46,8 @@ public class Phrase {
 
 	public void setPurposeType(String text){
 		if (text == null || text.length() == 0) return;
+		map = null;
+		conditions = null;
 
 		List<String> purposes = new ArrayList<>();
 		for(String purpose : text.replace("\n", "").split(",")) {
@@ -57,6 +62,8 @@ public class Phrase {
 
 	public void setSpriteType(String text){
 		if (text == null || text.length() == 0) return;
+		map = null;
+		conditions = null;
 		spriteType = text.trim().replace("\n", "").toUpperCase();
 	}
 
@@ -111,13 +118,100 @@ public class Phrase {
 		return phrase;
 	}
 
+	/** Read phrase from stream positioned at start of "phrase" element, stream is left at end of it.
+	 * Result is the same as {@link #create(Node)} gives for this element, but no tree is built. **/
+	public static Phrase create(XMLStreamReader reader) throws XMLStreamException {
+		String text = null, purpose = null, sprite = null, timeout = null;
+		Map<String, String> range = null;
+		List<String[]> tagsList = new ArrayList<>();
+
+		for (int event = reader.next(); event != XMLStreamConstants.END_ELEMENT; event = reader.next()) {
+			if (event != XMLStreamConstants.START_ELEMENT) continue;
+
+			String name = getElementName(reader);
+			if (name.equals("range")) {
+				if (range == null) range = readChildren(reader);
+				else readContent(reader);
+				continue;
+			}
+
+			String content = readContent(reader);
+			switch (name) {
+				case "text":    if (text == null) text = content;       break;
+				case "purpose": if (purpose == null) purpose = content; break;
+				case "sprite":  if (sprite == null) sprite = content;   break;
+				case "timeout": if (timeout == null) timeout = content; break;
+				default: tagsList.add(new String[]{ name, content });
+			}
+		}
+
+		if (text == null || text.length() < 2) return null;
+
+		Phrase phrase = new Phrase(text);
+		phrase.setPurposeType(purpose);
+		phrase.setSpriteType(sprite);
+		try {
+			phrase.timeout = timeout != null ? Integer.valueOf(timeout) : 0;
+		} catch (NumberFormatException e) {
+			phrase.timeout = 0;
+		}
+
+		if (range != null) {
+			for (int i = 0; i < CharacterFeatures.getFeatureCount(); i++) {
+				String value = range.get(CharacterFeatures.getFeatureName(i));
+				if (value != null) phrase.character.range[i] = new Range(value);
+			}
+		}
+
+		for (String[] tag : tagsList)
+			phrase.setTag(tag[0], tag[1]);
+		return phrase;
+	}
+
+	static String getElementName(XMLStreamReader reader) {
+		String prefix = reader.getPrefix();
+		return prefix == null || prefix.isEmpty() ? reader.getLocalName() : prefix + ":" + reader.getLocalName();
+	}
+
+	/** Read text of current element and all its descendants, like {@link Node#getTextContent()}. **/
+	static String readContent(XMLStreamReader reader) throws XMLStreamException {
+		StringBuilder sb = new StringBuilder();
+		for (int depth = 1; depth > 0; ) {
+			switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT: depth++; break;
+				case XMLStreamConstants.END_ELEMENT:   depth--; break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					sb.append(reader.getText());
+					break;
+			}
+		}
+		return sb.toString();
+	}
+
+	/** Read text of every child of current element, only first child with each name is kept. **/
+	private static Map<String, String> readChildren(XMLStreamReader reader) throws XMLStreamException {
+		Map<String, String> children = new HashMap<>();
+		for (int event = reader.next(); event != XMLStreamConstants.END_ELEMENT; event = reader.next()) {
+			if (event != XMLStreamConstants.START_ELEMENT) continue;
+			String name = getElementName(reader);
+			String content = readContent(reader);
+			children.putIfAbsent(name, content);
+		}
+		return children;
+	}
 
 	public void setTag(String tag,String text){
+		map = null;
+		conditions = null;
 		if(tags == null) tags = new TextOperations.TagsMap();
 		tags.put(tag, text);
 	}
 
 	public void setTags(String text){
+		map = null;
+		conditions = null;
 		if(tags == null) tags = new TextOperations.TagsMap();
 		tags.putFromText(text);
 	}
@@ -324,6 +418,59 @@ public class Phrase {
 		return map;
 	}
 
+	private Map<String, Object> map = null;
+
+	/** Get phrase as unmodifiable map. Map is created once, so use it instead of {@link #toMap()} if map is only read.
+	 * Collections inside map are unmodifiable copies too, arrays are given as unmodifiable lists. **/
+	public Map<String, Object> asMap() {
+		Map<String, Object> result = map;
+		if (result == null) {
+			result = (Map<String, Object>) readOnly(toMap());
+			map = result;
+		}
+		return result;
+	}
+
+	private static Object readOnly(Object value) {
+		if (value instanceof Map) {
+			Map<Object, Object> copy = new HashMap<>();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+				copy.put(entry.getKey(), readOnly(entry.getValue()));
+			return Collections.unmodifiableMap(copy);
+		}
+		if (value instanceof Set) {
+			Set<Object> copy = new LinkedHashSet<>();
+			for (Object item : (Set<?>) value)
+				copy.add(readOnly(item));
+			return Collections.unmodifiableSet(copy);
+		}
+		if (value instanceof Collection) {
+			List<Object> copy = new ArrayList<>();
+			for (Object item : (Collection<?>) value)
+				copy.add(readOnly(item));
+			return Collections.unmodifiableList(copy);
+		}
+		if (value instanceof Object[]) {
+			List<Object> copy = new ArrayList<>();
+			for (Object item : (Object[]) value)
+				copy.add(readOnly(item));
+			return Collections.unmodifiableList(copy);
+		}
+		return value;
+	}
+
+	private DefaultTagsListeners.TagsConditions conditions = null;
+
+	/** Get conditions of phrase tags checked by default tags listeners. They are compiled once, on first request. **/
+	DefaultTagsListeners.TagsConditions getConditions() {
+		DefaultTagsListeners.TagsConditions result = conditions;
+		if (result == null) {
+			result = new DefaultTagsListeners.TagsConditions(asMap());
+			conditions = result;
+		}
+		return result;
+	}
+
 	public String toString() {
 		StringBuilder s = new StringBuilder("{" + phraseText + "} / Purpose: " + getPurposesAsString() + " / Range: { " + character.toString() + " }");
 		if (!spriteType.equals(defaultSprite)) {
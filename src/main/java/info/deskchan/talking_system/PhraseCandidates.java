@@ -0,0 +1,84 @@
+package info.deskchan.talking_system;
+
+import java.util.*;
+
+/** List of phrases sent to "talk:reject-quote" and "talk:remove-quote" listeners.
+ * Every element is shared unmodifiable map of phrase, so the same list is given to all listeners without copying maps.
+ * Listeners answer with positions of phrases they reject in this list, as BitSet or collection of numbers.
+ * Old answer format, list of phrase maps with "hash" field, is still accepted.
+ * List is ArrayList, like it was before, so old listeners that cast message to ArrayList keep working.
+ * Positions always refer to phrases as they were sent, so listeners should not change the list. **/
+class PhraseCandidates extends ArrayList<Map<String, Object>> {
+
+	private final List<Phrase> phrases;
+	private final BitSet rejected = new BitSet();
+
+	// Built only if some listener answers in old format
+	private Map<Integer, Integer> positionsByHash = null;
+
+	PhraseCandidates(List<Phrase> phrases) {
+		super(phrases.size());
+		this.phrases = phrases;
+		for (Phrase phrase : phrases)
+			add(phrase.asMap());
+	}
+
+	Phrase getPhrase(int index) {
+		return phrases.get(index);
+	}
+
+	/** Mark phrases from listener answer as rejected. **/
+	synchronized void reject(Object answer) {
+		if (answer instanceof BitSet) {
+			rejected.or((BitSet) answer);
+			// Positions out of list are ignored, like in other answer formats
+			rejected.clear(phrases.size(), Math.max(phrases.size(), rejected.length()));
+			return;
+		}
+		if (answer instanceof int[]) {
+			for (int position : (int[]) answer)
+				rejectPosition(position);
+			return;
+		}
+		if (!(answer instanceof Collection)) return;
+
+		for (Object item : (Collection) answer) {
+			if (item instanceof Number) {
+				rejectPosition(((Number) item).intValue());
+			} else if (item instanceof Map) {
+				Object hash = ((Map) item).get("hash");
+				if (!(hash instanceof Number)) continue;
+
+				Integer position = getPositionsByHash().get(((Number) hash).intValue());
+				if (position != null) rejected.set(position);
+			}
+		}
+	}
+
+	/** Get set of rejected positions. **/
+	synchronized BitSet getRejected() {
+		return (BitSet) rejected.clone();
+	}
+
+	/** Get phrases that wasn't rejected. **/
+	synchronized List<Phrase> getRemaining() {
+		List<Phrase> remaining = new ArrayList<>();
+		for (int i = rejected.nextClearBit(0); i < phrases.size(); i = rejected.nextClearBit(i + 1))
+			remaining.add(phrases.get(i));
+		return remaining;
+	}
+
+	private void rejectPosition(int position) {
+		if (position >= 0 && position < phrases.size())
+			rejected.set(position);
+	}
+
+	private Map<Integer, Integer> getPositionsByHash() {
+		if (positionsByHash == null) {
+			positionsByHash = new HashMap<>();
+			for (int i = 0; i < phrases.size(); i++)
+				positionsByHash.put(phrases.get(i).hashCode(), i);
+		}
+		return positionsByHash;
+	}
+}
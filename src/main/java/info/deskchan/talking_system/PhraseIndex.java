@@ -0,0 +1,111 @@
+package info.deskchan.talking_system;
+
+import java.util.*;
+
+/** Index of phrases by purpose and character features.
+ * Phrase is identified by its position in index. For every value of every feature index keeps bitset of phrases
+ * whose range includes this value, and for every purpose it keeps bitset of phrases with this purpose,
+ * so phrases matching character and purpose are found by intersecting few bitsets instead of checking every phrase. **/
+class PhraseIndex {
+
+	private final Phrase[] phrases;
+	private final int words;
+
+	// [feature][value + BORDER] -> phrases whose range of feature includes value
+	private final long[][][] features;
+	private final Map<String, long[]> purposes = new HashMap<>();
+
+	PhraseIndex(List<Phrase> list) {
+		phrases = list.toArray(new Phrase[list.size()]);
+		words = (phrases.length + 63) >>> 6;
+
+		int featureCount = CharacterFeatures.getFeatureCount();
+		features = new long[featureCount][CharacterFeatures.LENGTH][words];
+		for (int id = 0; id < phrases.length; id++) {
+			Phrase phrase = phrases[id];
+			long bit = 1L << id;
+			int word = id >>> 6;
+
+			for (int i = 0; i < featureCount; i++) {
+				Range range = phrase.character.range[i];
+				for (int value = range.start; value <= range.end; value++)
+					features[i][value + CharacterFeatures.BORDER][word] |= bit;
+			}
+
+			for (String purpose : phrase.getPurposes())
+				purposes.computeIfAbsent(purpose, k -> new long[words])[word] |= bit;
+		}
+	}
+
+	/** Get bitset of phrases matching character. **/
+	long[] match(CharacterController character) {
+		long[] result = new long[words];
+		Arrays.fill(result, -1L);
+		for (int i = 0; i < features.length; i++) {
+			int value = character.getValue(i) + CharacterFeatures.BORDER;
+			if (value < 0 || value >= CharacterFeatures.LENGTH)
+				return new long[words];
+
+			long[] bits = features[i][value];
+			for (int w = 0; w < words; w++)
+				result[w] &= bits[w];
+		}
+		clearTail(result);
+		return result;
+	}
+
+	/** Get bitset of phrases that are both in <b>matching</b> and have <b>purpose</b>. **/
+	long[] filterByPurpose(long[] matching, String purpose) {
+		long[] bits = purposes.get(purpose);
+		long[] result = new long[words];
+		if (bits == null) return result;
+
+		for (int w = 0; w < words; w++)
+			result[w] = matching[w] & bits[w];
+		return result;
+	}
+
+	/** Get phrases from bitset in order of their ids. **/
+	List<Phrase> toList(long[] bits) {
+		List<Phrase> list = new ArrayList<>(count(bits));
+		for (int id = nextId(bits, 0); id >= 0; id = nextId(bits, id + 1))
+			list.add(phrases[id]);
+		return list;
+	}
+
+	/** Get id of first phrase in bitset starting from <b>from</b>, or -1 if there is no such phrase. **/
+	static int nextId(long[] bits, int from) {
+		int w = from >>> 6;
+		if (w >= bits.length) return -1;
+
+		long word = bits[w] & (-1L << from);
+		while (true) {
+			if (word != 0)
+				return (w << 6) + Long.numberOfTrailingZeros(word);
+			if (++w == bits.length)
+				return -1;
+			word = bits[w];
+		}
+	}
+
+	static int count(long[] bits) {
+		int count = 0;
+		for (long word : bits)
+			count += Long.bitCount(word);
+		return count;
+	}
+
+	Phrase get(int id) {
+		return phrases[id];
+	}
+
+	int size() {
+		return phrases.length;
+	}
+
+	private void clearTail(long[] bits) {
+		int tail = phrases.length & 63;
+		if (tail != 0)
+			bits[words - 1] &= (1L << tail) - 1;
+	}
+}
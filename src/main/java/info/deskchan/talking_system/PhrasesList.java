@@ -6,20 +6,25 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
+import java.io.BufferedInputStream;
 import java.io.InputStream;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 
 class PhrasesPack {
@@ -29,7 +34,7 @@ class PhrasesPack {
 	protected PackType packType;
 	protected Path packFile;
 	protected String packName;
-	protected ArrayList<Phrase> phrases = new ArrayList<>();
+	protected volatile ArrayList<Phrase> phrases = new ArrayList<>();
 	protected boolean loaded;
 
 	public PhrasesPack(String file, PackType packType) {
@@ -56,40 +61,83 @@ class PhrasesPack {
 		return packType;
 	}
 
+	/** Load phrases from snapshot or, if pack file was changed since snapshot was made, from file itself. **/
 	public void load(){
 		try {
-			phrases.clear();
-			DocumentBuilderFactory f = DocumentBuilderFactory.newInstance();
-			f.setValidating(false);
-
-			DocumentBuilder builder = f.newDocumentBuilder();
-			InputStream inputStream = Files.newInputStream(packFile);
-			Document doc = builder.parse(inputStream);
-			inputStream.close();
-			Node mainNode = doc.getChildNodes().item(0);
-			for (int i = 0; i < mainNode.getChildNodes().getLength(); i++) {
-				if (mainNode.getChildNodes().item(i).getNodeName().equals(Locale.getDefault().toLanguageTag())){
-					mainNode = mainNode.getChildNodes().item(i);
-					break;
-				}
-			}
-			NodeList list = mainNode.getChildNodes();
-			for (int i = 0; i < list.getLength(); i++) {
-				if (!list.item(i).getNodeName().equals("phrase")) continue;
-				try {
-					add(Phrase.create(list.item(i)));
-				} catch (Exception e2) {
-					Main.log(e2);
-				}
+			BasicFileAttributes attributes = Files.readAttributes(packFile, BasicFileAttributes.class);
+			PhrasesSnapshot snapshot = new PhrasesSnapshot(packFile);
+			List<Phrase> list = snapshot.read(attributes);
+			if (list == null) {
+				list = parse();
+				snapshot.write(list, attributes);
 			}
+			phrases = new ArrayList<>(list);
 		} catch (Exception e) {
 			Main.log(e);
+			phrases = new ArrayList<>();
 			loaded = false;
 			return;
 		}
 		loaded = true;
 	}
 
+	/** Read phrases from file element by element, without building tree of whole document. **/
+	private List<Phrase> parse() throws Exception {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+
+		String locale = Locale.getDefault().toLanguageTag();
+		List<Phrase> common = new ArrayList<>(), localized = null;
+
+		try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(packFile))) {
+			XMLStreamReader reader = factory.createXMLStreamReader(inputStream);
+			try {
+				reader.nextTag();
+				// Phrases of current locale are used instead of common phrases if file has them
+				for (int event = reader.next(); event != XMLStreamConstants.END_ELEMENT; event = reader.next()) {
+					if (event != XMLStreamConstants.START_ELEMENT) continue;
+
+					String name = Phrase.getElementName(reader);
+					if (localized == null && name.equals(locale)) {
+						localized = new ArrayList<>();
+						parsePhrases(reader, localized);
+					} else if (localized == null && name.equals("phrase")) {
+						addParsed(reader, common);
+					} else {
+						Phrase.readContent(reader);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		return localized != null ? localized : common;
+	}
+
+	private void parsePhrases(XMLStreamReader reader, List<Phrase> target) throws XMLStreamException {
+		for (int event = reader.next(); event != XMLStreamConstants.END_ELEMENT; event = reader.next()) {
+			if (event != XMLStreamConstants.START_ELEMENT) continue;
+
+			if (Phrase.getElementName(reader).equals("phrase"))
+				addParsed(reader, target);
+			else
+				Phrase.readContent(reader);
+		}
+	}
+
+	private void addParsed(XMLStreamReader reader, List<Phrase> target) throws XMLStreamException {
+		// Stream stays consistent even if phrase is wrong, because phrase element is read before phrase is created
+		try {
+			Phrase phrase = Phrase.create(reader);
+			if (phrase != null) target.add(phrase);
+		} catch (XMLStreamException e) {
+			throw e;
+		} catch (Exception e) {
+			Main.log(e);
+		}
+	}
+
 	public void add(Phrase quote) {
 		if (quote != null) phrases.add(quote);
 	}
@@ -191,7 +239,38 @@ public class PhrasesList {
 	private CharacterController current;
 	private LimitArrayList<Phrase> lastUsed = new LimitArrayList<>();
 	private volatile ArrayList<PhrasesPack> packs = new ArrayList<>();
-	private ArrayList<Phrase> matchingPhrases = new ArrayList<>();
+
+	// Index of phrases from all packs except databases, null if packs were changed since it was built
+	private PhraseIndex index = null;
+	private volatile Matching matching = Matching.EMPTY;
+
+	/** Phrases matching current character. It is never changed and is replaced as a whole on update,
+	 * so every request works with consistent set of phrases even if character changes at the same time. **/
+	private static class Matching {
+		static final Matching EMPTY = new Matching(new PhraseIndex(Collections.emptyList()), new long[0]);
+
+		final PhraseIndex index;
+		final long[] bits;
+		final List<Phrase> phrases;
+
+		Matching(PhraseIndex index, long[] bits) {
+			this.index = index;
+			this.bits = bits;
+			this.phrases = index.toList(bits);
+		}
+
+		/** Get matching without phrases at given positions in {@link #phrases}, made in one pass. **/
+		Matching without(BitSet positions) {
+			if (positions.isEmpty()) return this;
+
+			long[] newBits = bits.clone();
+			int position = 0;
+			for (int id = PhraseIndex.nextId(bits, 0); id >= 0; id = PhraseIndex.nextId(bits, id + 1), position++)
+				if (positions.get(position))
+					newBits[id >>> 6] &= ~(1L << id);
+			return new Matching(index, newBits);
+		}
+	}
 
 	PhrasesList(CharacterController character){
 		current = character.copy();
@@ -204,33 +283,29 @@ public class PhrasesList {
 	}
 	
 	public synchronized void update() {
-		matchingPhrases = new ArrayList<>();
-		ArrayList<Map<String,Object>> checkList = new ArrayList<>();
-
-		for (PhrasesPack pack : packs) {
-			if (pack.packType == PhrasesPack.PackType.DATABASE) continue;
-			for (Phrase phrase : pack.phrases)
-				if (phrase.matchToCharacter(current)) {
-					matchingPhrases.add(phrase);
-					checkList.add(phrase.toMap());
-				}
+		if (index == null) {
+			List<Phrase> phrases = new ArrayList<>();
+			for (PhrasesPack pack : packs)
+				if (pack.packType != PhrasesPack.PackType.DATABASE)
+					phrases.addAll(pack.phrases);
+			index = new PhraseIndex(phrases);
 		}
 
-		Main.getPluginProxy().sendMessage("talk:remove-quote", checkList, (sender, data) -> {
-			List<Map<String, Object>> phrasesList = (ArrayList) data;
-			if(phrasesList == null) return;
+		Matching newMatching = new Matching(index, index.match(current));
+		matching = newMatching;
 
-			for (Map<String,Object> phrase : phrasesList) {
-				if (!phrase.containsKey("hash")) continue;
+		// Listeners answer with positions of phrases that can never be used by current character, see PhraseCandidates
+		PhraseCandidates candidates = new PhraseCandidates(newMatching.phrases);
+		Main.getPluginProxy().sendMessage("talk:remove-quote", candidates,
+				(sender, data) -> candidates.reject(data),
+				(sender, data) -> removeRejected(newMatching, candidates.getRejected())
+		);
+	}
 
-				for(int i = 0, hash = (int) phrase.get("hash"); i < matchingPhrases.size(); i++){
-					if(matchingPhrases.get(i).hashCode() == hash){
-						matchingPhrases.remove(i);
-						break;
-					}
-				}
-			}
-		});
+	/** Replace matching by one without rejected phrases, unless it was already replaced by newer update. **/
+	private synchronized void removeRejected(Matching oldMatching, BitSet rejected) {
+		if (matching == oldMatching)
+			matching = oldMatching.without(rejected);
 	}
 
 	public static PhrasesList getDefault(CharacterController character){
@@ -257,17 +332,32 @@ public class PhrasesList {
 	}
 
 	public synchronized void add(List<String> files, PhrasesPack.PackType type){
-		for (String file : files)
-			add(file, type, true);
+		List<PhrasesPack> newPacks = new ArrayList<>();
+		for (String file : files) {
+			PhrasesPack pack = create(file, type);
+			if (pack != null && !newPacks.contains(pack)) newPacks.add(pack);
+		}
+
+		// Packs are independent, so they are loaded at the same time and added in order they were given
+		newPacks.parallelStream().forEach(PhrasesPack::load);
+		for (PhrasesPack pack : newPacks)
+			addLoaded(pack);
 
         update();
     }
 
 	public synchronized PhrasesPack add(String file, PhrasesPack.PackType packType) {
-		return add(file, packType, true);
+		PhrasesPack pack = create(file, packType);
+		if (pack == null) return null;
+
+		pack.load();
+		addLoaded(pack);
+		update();
+
+		return pack;
 	}
 
-	private synchronized PhrasesPack add(String file, PhrasesPack.PackType packType, boolean update) {
+	private PhrasesPack create(String file, PhrasesPack.PackType packType) {
 		PhrasesPack pack;
 		try {
 			pack = new PhrasesPack(file, packType);
@@ -276,16 +366,13 @@ public class PhrasesList {
 			return null;
 		}
 
-		if(packs.contains(pack)) return null;
-
-		pack.load();
+		return packs.contains(pack) ? null : pack;
+	}
 
+	private void addLoaded(PhrasesPack pack) {
 		packs.add(pack);
+		index = null;
 		Main.log("Loaded phrases: " + pack.getName()+" "+ pack.size());
-
-		if (update) update();
-
-		return pack;
 	}
 
 	public synchronized void set(List<String> files){
@@ -300,6 +387,7 @@ public class PhrasesList {
         for(int i = 0; i < packs.size(); i++){
            	if (dummyPacks.contains(packs.get(i))) continue;
             packs.remove(i);
+            index = null;
             i--;
         }
 
@@ -314,9 +402,8 @@ public class PhrasesList {
 	}
 
 	public synchronized void reload(){
-		for(PhrasesPack pack : packs){
-			pack.load();
-		}
+		packs.parallelStream().forEach(PhrasesPack::load);
+		index = null;
 		update();
 	}
 
@@ -325,12 +412,14 @@ public class PhrasesList {
 	}
 	public void requestRandomQuote(String purpose, Map info, PhraseGetterCallback callback) {
 		purpose = purpose.toUpperCase();
-		if (matchingPhrases.size() == 0) {
+		// Field is read once, so index and bits used below always belong to one matching
+		Matching m = matching;
+		if (m.phrases.size() == 0) {
 			callback.call(new Phrase(Main.getString("phrase." + purpose)));
 			return;
 		}
 
-		List<Phrase> currentlySuitable = new LinkedList<>();
+		List<Phrase> currentlySuitable = new ArrayList<>();
 		if (info != null && info.get("tags") != null) {
 			if (info.get("tags") instanceof Map)
 				info = new TextOperations.TagsMap((Map) info.get("tags"));
@@ -338,34 +427,23 @@ public class PhrasesList {
 				info = new TextOperations.TagsMap(info.get("tags").toString());
 		} else info = null;
 
-		List<Map> matchingList = new ArrayList<>();
-		for (Phrase phrase : matchingPhrases)
-			if (phrase.noTimeout() && phrase.purposeEquals(purpose)){
-				if (info == null || (phrase.getTags() != null && phrase.getTags().match(info))){
+		long[] withPurpose = m.index.filterByPurpose(m.bits, purpose);
+		for (int id = PhraseIndex.nextId(withPurpose, 0); id >= 0; id = PhraseIndex.nextId(withPurpose, id + 1)) {
+			Phrase phrase = m.index.get(id);
+			if (phrase.noTimeout()) {
+				if (info == null || (phrase.getTags() != null && phrase.getTags().match(info)))
 					currentlySuitable.add(phrase);
-					matchingList.add(phrase.toMap());
-				}
 			}
+		}
 
 		final String fPurpose = purpose;
-		Main.getPluginProxy().sendMessage("talk:reject-quote", matchingList,
-				(sender, data) -> {
-					List<Map<String, Object>> phrasesList = (ArrayList<Map<String,Object>>) data;
-					if(phrasesList == null) return;
-
-					for (Map<String, Object> phrase : phrasesList) {
-						if (!phrase.containsKey("hash")) continue;
-
-						for(int i = 0, hash = (int) phrase.get("hash"); i < currentlySuitable.size(); i++){
-							if(currentlySuitable.get(i).hashCode() == hash){
-								currentlySuitable.remove(i);
-								break;
-							}
-						}
-					}
-				},
+		// Listeners answer with positions of phrases that cannot be used right now, see PhraseCandidates
+		PhraseCandidates candidates = new PhraseCandidates(currentlySuitable);
+		Main.getPluginProxy().sendMessage("talk:reject-quote", candidates,
+				(sender, data) -> candidates.reject(data),
 				(sender, dat) -> {
-					if (currentlySuitable.size() == 0) {
+					List<Phrase> suitable = candidates.getRemaining();
+					if (suitable.size() == 0) {
 						callback.call(new Phrase(Main.getString("phrase."+fPurpose)));
 						return;
 					}
@@ -373,8 +451,8 @@ public class PhrasesList {
 					Phrase phrase;
 					do {
 						counter--;
-						int r = new Random().nextInt(currentlySuitable.size());
-						phrase = currentlySuitable.get(r);
+						int r = new Random().nextInt(suitable.size());
+						phrase = suitable.get(r);
 					} while (counter > 0 && lastUsed.contains(phrase));
 
 					lastUsed.add(phrase);
@@ -395,16 +473,17 @@ public class PhrasesList {
 	}
 
 	public Phrase get(int index) {
-		return matchingPhrases.get(index);
+		return matching.phrases.get(index);
 	}
 	
 	public int size() {
-		return matchingPhrases.size();
+		return matching.phrases.size();
 	}
 	
 	public synchronized void clear() {
 		packs = new ArrayList<>();
-		matchingPhrases = new ArrayList<>();
+		index = null;
+		matching = Matching.EMPTY;
 		lastUsed = new LimitArrayList<>();
 	}
 
@@ -0,0 +1,227 @@
+package info.deskchan.talking_system;
+
+import info.deskchan.core_utils.TextOperations;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/** Binary snapshot of phrases loaded from pack file.
+ * Snapshot is used instead of parsing XML while pack file has the same size and modification time.
+ * Locale is part of snapshot too, because it selects which phrases of file are loaded. **/
+class PhrasesSnapshot {
+
+	private static final int MAGIC = 0x44435048;
+	private static final int VERSION = 1;
+
+	private final Path pack;
+	private final Path file;
+
+	// Snapshots of removed packs are searched once per launch, on first write
+	private static volatile boolean staleRemoved = false;
+
+	PhrasesSnapshot(Path pack) {
+		this.pack = pack.toAbsolutePath().normalize();
+		file = Main.getDataDirPath().resolve("phrases-cache").resolve(
+				pack.getFileName() + "-" + Integer.toHexString(this.pack.toString().hashCode()) + ".bin"
+		);
+	}
+
+	/** Read phrases from snapshot.
+	 * @param attributes Attributes of pack file
+	 * @return Phrases, or null if there is no snapshot for current state of file **/
+	List<Phrase> read(BasicFileAttributes attributes) {
+		if (!Files.isReadable(file)) return null;
+
+		// Whole file is read at once, so available() is exactly the count of bytes left
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+			if (!pack.toString().equals(readString(in)) ||
+				in.readLong() != attributes.size() ||
+				in.readLong() != attributes.lastModifiedTime().toMillis() ||
+				!Locale.getDefault().toLanguageTag().equals(readString(in)) ||
+				in.readInt() != CharacterFeatures.getFeatureCount())
+				return null;
+
+			int count = readCount(in);
+			List<Phrase> phrases = new ArrayList<>(count);
+			for (int i = 0; i < count; i++)
+				phrases.add(readPhrase(in));
+			return phrases;
+		} catch (Exception e) {
+			Main.log("Cannot read phrases snapshot " + file + ", it will be removed: " + e);
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException e2) { }
+			return null;
+		}
+	}
+
+	/** Save phrases to snapshot.
+	 * @param phrases Phrases loaded from pack file
+	 * @param attributes Attributes of pack file taken before it was read **/
+	void write(List<Phrase> phrases, BasicFileAttributes attributes) {
+		Path temp = null;
+		try {
+			Files.createDirectories(file.getParent());
+			temp = Files.createTempFile(file.getParent(), "tmp", ".bin");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				writeString(out, pack.toString());
+				out.writeLong(attributes.size());
+				out.writeLong(attributes.lastModifiedTime().toMillis());
+				writeString(out, Locale.getDefault().toLanguageTag());
+				out.writeInt(CharacterFeatures.getFeatureCount());
+
+				out.writeInt(phrases.size());
+				for (Phrase phrase : phrases)
+					writePhrase(out, phrase);
+			}
+			// Snapshot is replaced as a whole, so reader never sees half-written file
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			if (!staleRemoved) {
+				staleRemoved = true;
+				removeStale(file.getParent());
+			}
+		} catch (Exception e) {
+			Main.log("Cannot save phrases snapshot " + file + ": " + e);
+		} finally {
+			try {
+				if (temp != null) Files.deleteIfExists(temp);
+			} catch (IOException e) { }
+		}
+	}
+
+	/** Delete snapshots of packs that don't exist anymore and snapshots of other versions. **/
+	private static void removeStale(Path dir) {
+		File[] files = dir.toFile().listFiles((d, name) -> name.endsWith(".bin") && !name.startsWith("tmp"));
+		if (files == null) return;
+
+		for (File snapshot : files) {
+			boolean stale = true;
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)))) {
+				if (in.readInt() == MAGIC && in.readInt() == VERSION)
+					stale = !Files.exists(Paths.get(readString(in)));
+			} catch (Exception e) { }
+
+			if (stale) {
+				if (!snapshot.delete())
+					Main.log("Cannot delete stale phrases snapshot " + snapshot);
+			}
+		}
+	}
+
+	private static void writePhrase(DataOutputStream out, Phrase phrase) throws IOException {
+		writeString(out, phrase.phraseText);
+		writeStrings(out, phrase.purposeType);
+		writeString(out, phrase.spriteType);
+		out.writeInt(phrase.timeout);
+
+		for (Range range : phrase.character.range) {
+			out.writeInt(range.start);
+			out.writeInt(range.end);
+		}
+
+		if (phrase.tags == null) {
+			out.writeInt(-1);
+			return;
+		}
+		Set<String> names = phrase.tags.keySet();
+		out.writeInt(names.size());
+		for (String name : names) {
+			writeString(out, name);
+			Set<String> values = phrase.tags.get(name);
+			if (values == null) {
+				writeStrings(out, null);
+				continue;
+			}
+			// Negations go first, so adding values back in this order gives the same set, see TagsMap
+			List<String> ordered = new ArrayList<>(values.size());
+			for (String value : values)
+				if (value.charAt(0) == '!') ordered.add(value);
+			for (String value : values)
+				if (value.charAt(0) != '!') ordered.add(value);
+			writeStrings(out, ordered);
+		}
+	}
+
+	private static Phrase readPhrase(DataInputStream in) throws IOException {
+		Phrase phrase = new Phrase(readString(in));
+		phrase.purposeType = readStrings(in);
+		phrase.spriteType = readString(in);
+		phrase.timeout = in.readInt();
+
+		Range[] ranges = phrase.character.range;
+		for (int i = 0; i < ranges.length; i++)
+			ranges[i] = Range.restore(in.readInt(), in.readInt());
+
+		int tagsCount = in.readInt();
+		if (tagsCount > in.available() / 8)
+			throw new IOException("tags count " + tagsCount + " exceeds the rest of file");
+		if (tagsCount >= 0) {
+			phrase.tags = new TextOperations.TagsMap<>();
+			for (int i = 0; i < tagsCount; i++) {
+				String name = readString(in);
+				List<String> values = readStrings(in);
+				if (values != null) phrase.tags.put(name, (Collection) values);
+				else phrase.tags.put(name);
+			}
+		}
+		return phrase;
+	}
+
+	/** Read count of items that take at least 4 bytes each. **/
+	private static int readCount(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		if (count < 0 || count > in.available() / 4)
+			throw new IOException("count " + count + " doesn't match the rest of file");
+		return count;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) return null;
+		if (length > in.available())
+			throw new IOException("string length " + length + " exceeds the rest of file");
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+		if (values == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(values.size());
+		for (String value : values)
+			writeString(out, value);
+	}
+
+	private static List<String> readStrings(DataInputStream in) throws IOException {
+		int count = in.readInt();
+		if (count < 0) return null;
+		if (count > in.available() / 4)
+			throw new IOException("strings count " + count + " exceeds the rest of file");
+		List<String> values = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+			values.add(readString(in));
+		return values;
+	}
+}
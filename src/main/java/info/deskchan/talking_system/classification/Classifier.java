@@ -9,7 +9,6 @@ public class Classifier {
 
     public KnowledgeBase base;
     protected static final float BORDER = 0.01F;
-    //protected static final float SMOOTHING = 0.1F;
 
     public Classifier() {
         base = new KnowledgeBase();
@@ -19,47 +18,70 @@ public class Classifier {
         base.add(phrase);
     }
 
+    /** Get purposes of phrase, from most to least probable. **/
     public List<String> classify(String phrase){
-        if (phrase == null) return new LinkedList<>();
-        ArrayList<String> text = TextOperations.simplifyWords(TextOperations.extractWordsLower(phrase));
-        Map<String, Float> probabilities = new HashMap<>();
+        return classify(phrase, Integer.MAX_VALUE);
+    }
 
-        for (Container cl : base.classes){
-            /*float classProbability = base.countClassProbability(cl);
+    /** Get no more than <b>limit</b> most probable purposes of phrase, from most to least probable.
+     * Zero or negative limit means no limit. **/
+    public List<String> classify(String phrase, int limit){
+        if (phrase == null) return new LinkedList<>();
+        return select(score(phrase, new float[base.classes.size()]), limit);
+    }
 
-            float multiply = 1;
-            for (String sWord: text) {
-                multiply *= (cl.getCount(sWord) + SMOOTHING) / (classProbability + cl.getUniqueWordsCount() * SMOOTHING);
-                System.out.println(cl.getName() + " " + sWord + " " + cl.getCount(sWord) + " " + (classProbability + cl.getUniqueWordsCount() * 0.7) + " " + multiply);
+    /** Get purposes of every phrase in collection, in the same order as phrases.
+     * Zero or negative limit means no limit. **/
+    public List<List<String>> classify(Collection<String> phrases, int limit){
+        List<List<String>> result = new ArrayList<>(phrases.size());
+        float[] scores = new float[base.classes.size()];
+        for (String phrase : phrases) {
+            if (phrase == null) {
+                result.add(new LinkedList<>());
+                continue;
             }
-            System.out.println(cl.getName() + " " + multiply * classProbability);
-            probabilities.put(cl.getName(), multiply * classProbability);*/
+            Arrays.fill(scores, 0);
+            result.add(select(score(phrase, scores), limit));
+        }
+        return result;
+    }
+
+    private float[] score(String phrase, float[] scores){
+        List<String> text = TextOperations.simplifyWords(TextOperations.extractWordsLower(phrase));
+        int[] words = base.getWordIds(text);
 
+        for (int i = 0; i < scores.length; i++) {
+            Container cl = base.classes.get(i);
             float result = 0;
-            for (String sWord: text) {
-                result += cl.getCount(sWord);
+            for (int word : words) {
+                result += cl.getCount(word);
             }
-            //System.out.println(cl.getName() + " " + result / cl.getSum());
-            probabilities.put(cl.getName(), result / cl.getSum());
+            scores[i] = result / cl.getSum();
         }
+        return scores;
+    }
 
-        LinkedList<Map.Entry<String, Float>> probabilitiesList = new LinkedList<>(probabilities.entrySet());
-        probabilitiesList.sort(new Comparator<Map.Entry<String, Float>>() {
-            @Override
-            public int compare(Map.Entry<String, Float> o1, Map.Entry<String, Float> o2) {
-                return Float.compare(o2.getValue(), o1.getValue());
-            }
-        });
+    // Keeps best classes sorted in small array instead of sorting all of them
+    private List<String> select(float[] scores, int limit){
+        int[] top = new int[limit > 0 ? Math.min(limit, scores.length) : scores.length];
+        int size = 0;
+        if (top.length == 0) return new ArrayList<>();
+
+        for (int i = 0; i < scores.length; i++) {
+            if (!(scores[i] > BORDER)) continue;
+            if (size == top.length && scores[top[size - 1]] >= scores[i]) continue;
 
-        List<String> result = new ArrayList<>();
-        while (probabilitiesList.size() > 0) {
-            Map.Entry<String, Float> entry = probabilitiesList.getFirst();
-            if (entry.getValue() > BORDER) {
-                result.add(entry.getKey());
-                probabilitiesList.removeFirst();
-            } else break;
+            int position = size < top.length ? size++ : size - 1;
+            while (position > 0 && scores[top[position - 1]] < scores[i]) {
+                top[position] = top[position - 1];
+                position--;
+            }
+            top[position] = i;
         }
 
+        List<String> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            result.add(base.classes.get(top[i]).getName());
         return result;
     }
 }
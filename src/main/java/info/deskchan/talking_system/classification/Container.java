@@ -1,25 +1,26 @@
 package info.deskchan.talking_system.classification;
 
-import java.util.HashMap;
-import java.util.List;
+import java.util.Arrays;
 
 class Container {
     protected String name;
-    //protected HashMap<String, Integer> words;
     private float sum;
-    protected HashMap<String, Float> words;
+
+    // weights of words by their ids in knowledge base, words with id out of array have zero weight
+    private float[] counts = new float[16];
+    private int uniqueWords = 0;
 
     public Container(String name) {
         this.name = name;
-        words = new HashMap<>();
     }
 
-    public void add(List<String> newWords) {
-        float koef = 1.0F / newWords.size();
-        //System.out.println(newWords + " " + koef);
-        for (String word : newWords) {
-            Float count = words.getOrDefault(word, 0F);
-            words.put(word, count + koef);
+    public void add(int[] newWords) {
+        float koef = 1.0F / newWords.length;
+        for (int word : newWords) {
+            if (word >= counts.length)
+                counts = Arrays.copyOf(counts, Math.max(counts.length * 2, word + 1));
+            if (counts[word] == 0) uniqueWords++;
+            counts[word] += koef;
         }
         sum += 1;
     }
@@ -28,19 +29,15 @@ class Container {
         return name;
     }
 
-    //public int getCount(String word) {
-    //    return words.getOrDefault(word, 0);
-    //}
-
-    public float getCount(String word) {
-        return words.getOrDefault(word, 0F);
+    public float getCount(int word) {
+        return word >= 0 && word < counts.length ? counts[word] : 0F;
     }
 
     public int getUniqueWordsCount() {
-        return words.keySet().size();
+        return uniqueWords;
     }
 
     public float getSum() {
         return sum;
     }
-}
\ No newline at end of file
+}
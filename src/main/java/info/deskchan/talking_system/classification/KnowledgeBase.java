@@ -4,34 +4,46 @@ import info.deskchan.core_utils.TextOperations;
 import info.deskchan.talking_system.Phrase;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 class KnowledgeBase {
 
     public List<Container> classes = new ArrayList<>();
+    private Map<String, Container> classesByName = new HashMap<>();
+
+    // Every word gets its id once, classes keep weights of words in arrays by these ids
+    private Map<String, Integer> wordIds = new HashMap<>();
 
     public void add(Phrase phrase) {
         String text = phrase.getPhraseText();
         text = text.replace("\\{[^\\{\\}]+\\}", "");
-        ArrayList<String> words = TextOperations.simplifyWords(TextOperations.extractWordsLower(text));
+        List<String> words = TextOperations.simplifyWords(TextOperations.extractWordsLower(text));
+
+        int[] ids = new int[words.size()];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = wordIds.computeIfAbsent(words.get(i), word -> wordIds.size());
 
         for (String purpose : phrase.getPurposes()) {
-            boolean found = false;
-            for (Container container : classes) {
-                if (purpose.equals(container.getName())) {
-                    found = true;
-                    container.add(words);
-                    break;
-                }
-            }
-            if (!found) {
-                Container container = new Container(purpose);
-                container.add(words);
+            Container container = classesByName.get(purpose);
+            if (container == null) {
+                container = new Container(purpose);
+                classesByName.put(purpose, container);
                 classes.add(container);
             }
+            container.add(ids);
         }
     }
 
+    /** Get ids of words, -1 for words that base doesn't know. **/
+    public int[] getWordIds(List<String> words) {
+        int[] ids = new int[words.size()];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = wordIds.getOrDefault(words.get(i), -1);
+        return ids;
+    }
+
     public float countClassProbability(Container container){
         if (classes.size() == 0)
             return 0.0F;
@@ -43,4 +55,4 @@ class KnowledgeBase {
         return (float) container.getUniqueWordsCount() / allWords;
     }
 
-}
\ No newline at end of file
+}
@@ -4,6 +4,8 @@ import info.deskchan.core.PluginProxyInterface;
 import info.deskchan.talking_system.CharacterPreset;
 import info.deskchan.talking_system.Phrase;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -39,6 +41,28 @@ public class Main {
             pluginProxy.sendMessage("DeskChan:user-said#talk:classify-text", map);
         });
 
+        /* Classify many texts at once, for example phrases of imported database
+        * Public message
+        * Params: List<String>! - texts
+        *      or
+        *         Map
+        *           value: List<String>! - texts
+        *           limit: Int? - maximum count of purposes for every text, 0 or less for no limit
+        * Returns: List<List<String>> - purposes of every text, from most to least probable */
+        pluginProxy.addMessageListener("talk:classify-texts", (sender, tag, data) -> {
+            Collection<String> texts;
+            int limit = Integer.MAX_VALUE;
+            if (data instanceof Map) {
+                Map map = (Map) data;
+                texts = (Collection) map.getOrDefault("value", new ArrayList<>());
+                if (map.get("limit") instanceof Number)
+                    limit = ((Number) map.get("limit")).intValue();
+            } else {
+                texts = (Collection) data;
+            }
+            pluginProxy.sendMessage(sender, classifier.classify(texts, limit));
+        });
+
         pluginProxy.addMessageListener("talk:character-updated", (sender, tag, data) -> {
             setClassifier();
         });
@@ -117,28 +117,25 @@ public class Main implements Plugin {
         });
 
         pluginProxy.addMessageListener("talk:reject-quote",(sender, tag, data) -> {
+            // Answer is set of positions of rejected quotes in list
             List<Map<String, Object>> list = (List<Map<String, Object>>) data;
-            List<Map<String, Object>> quotes_list = new ArrayList<>();
+            BitSet rejected = new BitSet();
             if (list != null) {
                 TimeForecast now = server.getNow();
                 if (now != null) {
-                    for (Map<String, Object> entry : list) {
-                        Collection<String> types = (Collection) entry.get("weather");
+                    for (int i = 0; i < list.size(); i++) {
+                        Collection<String> types = (Collection) list.get(i).get("weather");
                         if (types == null) continue;
-                        if (now == null) {
-                            quotes_list.add(entry);
-                            continue;
-                        }
                         for (String type : types) {
-                            if (!isWeatherMatch(type, server.getNow().weather, server.getNow().temp)) {
-                                quotes_list.add(entry);
+                            if (!isWeatherMatch(type, now.weather, now.temp)) {
+                                rejected.set(i);
                                 break;
                             }
                         }
                     }
                 }
             }
-            pluginProxy.sendMessage(sender, quotes_list);
+            pluginProxy.sendMessage(sender, rejected);
         });
 
         setupOptionsTab();
@@ -1,6 +1,9 @@
 package info.deskchan.core
 
 import java.io.File
+import java.util.ArrayDeque
+import java.util.concurrent.*
+import java.util.concurrent.atomic.AtomicInteger
 
 typealias PluginFiles = Set<File>
 
@@ -8,10 +11,19 @@ typealias PluginFiles = Set<File>
 object LoaderManager {
 
     /** Extensions that registered loaders can interpret as plugin. **/
-    private val registeredExtensions = mutableSetOf<String>()
+    private val registeredExtensions: MutableSet<String> = ConcurrentHashMap.newKeySet()
     /** 'plugins' path. **/
     private val pluginsDirPath = PluginManager.getPluginsDirPath()
 
+    /** Count of threads loading plugins at once, 1 to load plugins one by one on calling thread. **/
+    @JvmStatic
+    @Volatile
+    var loaderThreads = Math.min(4, Runtime.getRuntime().availableProcessors())
+
+    /** Attempts to load plugins made by last call of [loadPlugins]. **/
+    private val timeline = CopyOnWriteArrayList<StartupRecord>()
+    @Volatile private var loadingTime = 0L
+
     /** Scan plugins directory to runnable plugins. **/
     private fun scanPluginsDir(): PluginFiles {
         val loadedPlugins = PluginManager.getInstance().namesOfLoadedPlugins
@@ -20,55 +32,157 @@ object LoaderManager {
 
     /** Automatically load all plugins from 'plugin' directory. **/
     internal fun loadPlugins() {
+        val start = System.nanoTime()
+        timeline.clear()
         var unloadedPlugins = scanPluginsDir()
 
         var loaderCount: Int
         do {
             loaderCount = registeredExtensions.size
-            unloadedPlugins = unloadedPlugins
-                    .loadFilePlugins()
-                    .loadDirectoryPlugins()
+            val extensions = registeredExtensions.toSet()
+            unloadedPlugins = unloadedPlugins.loadGraph(start) { it.isDirectory || it.extension in extensions }
         } while (unloadedPlugins.isNotEmpty() && loaderCount != registeredExtensions.size )
-        
+
         unloadedPlugins
-                .loadRestPlugins()
+                .loadGraph(start) { true }
                 .forEach { PluginManager.log("Could not match loader for plugin ${it.name}") }
+
+        loadingTime = System.nanoTime() - start
+        logTimeline()
     }
 
-    /** Iterates over all registered extensions to find loadable plugins. **/
-    private fun PluginFiles.loadFilePlugins(): PluginFiles {
-        val unloadedPlugins = this.toMutableSet()
-        val extensions = registeredExtensions.toSet()
-        extensions.forEach { ext ->
-            this.filter { it.extension == ext }.forEach { unloadedPlugins.tryLoadPlugin(it) }
+    /** Loads plugins accepted by filter in order of their dependencies. Plugins that don't depend on each other
+     * are loaded in parallel. Loaders ('*support' and '*loader' directories) are loaded before other plugins.
+     * @return Plugins that wasn't loaded **/
+    private fun PluginFiles.loadGraph(start: Long, filter: (File) -> Boolean): PluginFiles {
+        val unloadedPlugins: MutableSet<File> = ConcurrentHashMap.newKeySet()
+        unloadedPlugins.addAll(this)
+
+        val nodes = this.filter(filter).map { PluginNode(it) }
+        if (nodes.isEmpty()) return unloadedPlugins
+
+        val nodesById = nodes.associateBy { it.id }
+        val loaders = nodes.filter { it.isLoader }
+        nodes.forEach { node ->
+            val dependencies = node.dependencies.mapNotNull { nodesById[it] }.toMutableSet()
+            if (!node.isLoader) dependencies.addAll(loaders)
+            dependencies.remove(node)
+            dependencies.forEach { it.dependents.add(node) }
+            node.waitingFor = dependencies.size
+        }
+
+        val threads = Math.max(1, loaderThreads)
+        val executor: ExecutorService? = if (threads > 1) Executors.newFixedThreadPool(threads, LoaderThreadFactory) else null
+        val completion = ExecutorCompletionService<PluginNode>(executor ?: Executor { it.run() })
+
+        // Graph is changed only by this thread, workers just load plugins
+        val ready = ArrayDeque(nodes.filter { it.waitingFor == 0 })
+        var remaining = nodes.size
+        var running = 0
+        try {
+            while (remaining > 0) {
+                while (ready.isNotEmpty()) {
+                    val node = ready.poll()
+                    node.waitingFor = -1
+                    node.readyTime = System.nanoTime()
+                    running++
+                    completion.submit {
+                        if (node.load(start)) unloadedPlugins.remove(node.file)
+                        node
+                    }
+                }
+                if (running == 0) {
+                    // Only plugins with cyclic dependencies are left, so one of them is loaded without waiting
+                    val node = nodes.first { it.waitingFor > 0 }
+                    PluginManager.log("Plugin ${node.id} has cyclic dependencies")
+                    ready.add(node)
+                    continue
+                }
+
+                val node = completion.take().get()
+                running--
+                remaining--
+                node.dependents.forEach {
+                    it.waitingFor--
+                    if (it.waitingFor == 0) ready.add(it)
+                }
+            }
+        } finally {
+            executor?.shutdown()
         }
         return unloadedPlugins
     }
 
-    /** Iterates over all first level directories to find loadable plugins. **/
-    private fun PluginFiles.loadDirectoryPlugins(): PluginFiles {
-        val unloadedPlugins = this.toMutableSet()
-        val (loaders, plugins) = this
-                .filter { it.isDirectory }
-                .partition { it.name.endsWith("support") || it.name.endsWith("loader") }
-        (loaders + plugins).forEach { unloadedPlugins.tryLoadPlugin(it) }
-        return unloadedPlugins
+    /** Plugin file waiting for loading with its place in dependency graph. **/
+    private class PluginNode(val file: File) {
+        val id: String = if (file.isDirectory) file.name else file.nameWithoutExtension
+        val isLoader = file.isDirectory && (file.name.endsWith("support") || file.name.endsWith("loader"))
+        val dependencies: List<String> = readDependencies()
+        val dependents = mutableListOf<PluginNode>()
+        var waitingFor = 0
+        var readyTime = 0L
+
+        /** Dependencies are known before loading only if plugin directory has manifest. **/
+        private fun readDependencies(): List<String> {
+            val manifest = File(file, "manifest.json")
+            if (!file.isDirectory || !manifest.exists()) return emptyList()
+
+            val config = PluginConfig()
+            config.appendFromJson(manifest)
+            return config.getDependencies()
+        }
+
+        fun load(start: Long): Boolean {
+            val begin = System.nanoTime()
+            val loaded = PluginManager.getInstance().tryLoadPluginByPath(file.toPath())
+            val end = System.nanoTime()
+            timeline.add(StartupRecord(id, Thread.currentThread().name, begin - start, begin - readyTime, end - begin, loaded))
+            return loaded
+        }
     }
 
-    /** Tries to load all plugins that wasn't loaded previously. **/
-    private fun PluginFiles.loadRestPlugins(): PluginFiles {
-        val unloadedPlugins = this.toMutableSet()
-        this.forEach { unloadedPlugins.tryLoadPlugin(it) }
-        return unloadedPlugins
+    private class StartupRecord(val id: String, val thread: String, val start: Long, val wait: Long, val duration: Long, val loaded: Boolean) {
+        fun toMap(): Map<String, Any> = mapOf(
+                "id" to id,
+                "thread" to thread,
+                "start" to start / 1000000,
+                "wait" to wait / 1000000,
+                "duration" to duration / 1000000,
+                "loaded" to loaded
+        )
     }
 
-    /** Tries to load plugin that wasn't loaded previously. **/
-    private fun MutableSet<File>.tryLoadPlugin(file: File) {
-        if (PluginManager.getInstance().tryLoadPluginByPath(file.toPath())) {
-            this.remove(file)
+    private object LoaderThreadFactory : ThreadFactory {
+        private val counter = AtomicInteger()
+
+        override fun newThread(runnable: Runnable): Thread {
+            val thread = Thread(runnable, "plugin-loader-" + counter.incrementAndGet())
+            thread.isDaemon = true
+            return thread
         }
     }
 
+    private fun logTimeline() {
+        PluginManager.log("Plugins directory loaded in ${loadingTime / 1000000} ms using $loaderThreads threads")
+        timeline.sortedBy { it.start }.forEach {
+            PluginManager.log(String.format("  %-24s start: %6d ms, waited: %5d ms, took: %5d ms, %s%s",
+                    it.id, it.start / 1000000, it.wait / 1000000, it.duration / 1000000, it.thread,
+                    if (it.loaded) "" else ", not loaded"))
+        }
+    }
+
+    /** Get startup timeline of plugins from 'plugins' directory.
+     * @return Map with fields:
+     *     total: Long - time of loading all plugins, ms
+     *     plugins: List of Maps (id: String, thread: String, start: Long, wait: Long, duration: Long, loaded: Boolean),
+     *              every map is one attempt to load plugin. Start is counted from the beginning of loading, wait is
+     *              time between all dependencies of plugin were loaded and start of its loading, time in ms **/
+    @JvmStatic
+    fun getStartupTimeline(): Map<String, Any> = mapOf(
+            "total" to loadingTime / 1000000,
+            "plugins" to timeline.sortedBy { it.start }.map { it.toMap() }
+    )
+
     fun registerExtensions(vararg extensions: String) = registeredExtensions.addAll(extensions)
     fun registerExtensions(extensions: List<String>) = registerExtensions(*extensions.toTypedArray())
 
@@ -10,6 +10,12 @@ import java.net.URLClassLoader
 import java.nio.file.Path
 import java.util.*
 import java.util.Locale
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ScheduledThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicInteger
 
 
 class PluginProxy (private val id:String, private val plugin: Plugin, private val config: PluginConfig)
@@ -17,9 +23,11 @@ class PluginProxy (private val id:String, private val plugin: Plugin, private va
 
     private val loader: ClassLoader = plugin::class.java.classLoader
     private val messageListeners = HashMap<String, MutableSet<MessageListener>>()
-    private val responseListeners = HashMap<Any, ResponseInfo>()
-    private var seq = 0
+    private val responseListeners = PendingResponses<ResponseInfo>()
+    private val seq = AtomicInteger()
+    @Volatile private var nextExpirationCheck = 0L
     private val properties: PluginProperties = PluginProperties(this)
+    private val mailbox = PluginMailbox(id)
 
     override fun getId(): String = id
 
@@ -47,6 +55,7 @@ class PluginProxy (private val id:String, private val plugin: Plugin, private va
             }
         }
         messageListeners.clear()
+        mailbox.close()
         PluginManager.getInstance().unregisterPlugin(this)
     }
 
@@ -55,29 +64,78 @@ class PluginProxy (private val id:String, private val plugin: Plugin, private va
     }
 
     override fun sendMessage(tag: String, data: Any?, responseListener: ResponseListener, returnListener: ResponseListener): Any {
+        return sendRequest(tag, data, responseListener, returnListener, responseTimeout)
+    }
+
+    override fun sendMessage(tag: String, data: Any?, responseListener: ResponseListener): Any {
+        return sendRequest(tag, data, responseListener, null, responseTimeout)
+    }
+
+    /** Send message with response address of this plugin.
+     * @param timeout Time after which waiting for responses is stopped and return listener is called, ms, 0 to wait forever
+     * @return Sequence number of request or -1 if there is no listeners for tag **/
+    internal fun sendRequest(tag: String, data: Any?, responseListener: ResponseListener, returnListener: ResponseListener?, timeout: Long): Int {
         val count = PluginManager.getInstance().getMessageListenersCount(tag)
         // if there is no listeners for this tag, we skip sending message
         if (count == 0) {
-            returnListener.handle(id, null)
+            returnListener?.handle(id, null)
             return -1
         }
 
-        seq++
-        responseListeners.put(seq, ResponseInfo(responseListener, count, returnListener))
-        PluginManager.getInstance().sendMessage(id + "#" + seq, tag, data)
+        removeExpiredResponses()
+        val seq = nextSeq()
+        // Notifications of timers can come after any delay, so they are never expired
+        val deadline = if (timeout > 0 && tag != TIMER_TAG) System.currentTimeMillis() + timeout else PendingResponses.NEVER
+        responseListeners.put(seq, ResponseInfo(responseListener, count, returnListener), deadline)
+        PluginManager.getInstance().sendMessage(ResponseAddress.format(id, seq), tag, data)
         return seq
     }
 
-    override fun sendMessage(tag: String, data: Any?, responseListener: ResponseListener): Any {
+    override fun request(tag: String, data: Any?): CompletableFuture<List<Any?>> {
+        return request(tag, data, requestTimeout)
+    }
+
+    override fun request(tag: String, data: Any?, timeout: Long): CompletableFuture<List<Any?>> {
+        val future = CompletableFuture<List<Any?>>()
         val count = PluginManager.getInstance().getMessageListenersCount(tag)
-        // if there is no listeners for this tag, we skip sending message
-        if (count == 0)
-            return -1
+        if (count == 0) {
+            future.complete(emptyList())
+            return future
+        }
 
-        seq++
-        responseListeners.put(seq, ResponseInfo(responseListener, count))
-        PluginManager.getInstance().sendMessage(id + "#" + seq, tag, data)
-        return seq
+        removeExpiredResponses()
+        val seq = nextSeq()
+        // Futures are expired by scheduler, not by lazy check, so they are completed in time even if plugin is idle
+        responseListeners.put(seq, FutureResponseInfo(count, future), PendingResponses.NEVER)
+        if (timeout > 0) {
+            val timeoutTask = timeoutScheduler.schedule({
+                if (responseListeners.remove(seq) != null)
+                    future.completeExceptionally(TimeoutException("Not all receivers of $tag responded in $timeout ms"))
+            }, timeout, TimeUnit.MILLISECONDS)
+            future.whenComplete { _, _ -> timeoutTask.cancel(false) }
+        }
+        future.whenComplete { _, _ ->
+            if (future.isCancelled) responseListeners.remove(seq)
+        }
+
+        PluginManager.getInstance().sendMessage(ResponseAddress.format(id, seq), tag, data)
+        return future
+    }
+
+    private fun nextSeq(): Int {
+        while (true) {
+            val next = seq.incrementAndGet() and Int.MAX_VALUE
+            if (next != 0) return next
+        }
+    }
+
+    private fun removeExpiredResponses() {
+        val now = System.currentTimeMillis()
+        if (now < nextExpirationCheck) return
+        nextExpirationCheck = now + EXPIRATION_CHECK_PERIOD
+
+        for (info in responseListeners.removeExpired(now))
+            info.expire(id)
     }
 
     override fun addMessageListener(tag: String, listener: MessageListener) {
@@ -87,7 +145,7 @@ class PluginProxy (private val id:String, private val plugin: Plugin, private va
             messageListeners.put(tag, listeners)
         }
         listeners.add(listener)
-        PluginManager.getInstance().registerMessageListener(tag, listener)
+        PluginManager.getInstance().registerMessageListener(tag, listener, mailbox)
     }
 
     override fun removeMessageListener(tag: String, listener: MessageListener) {
@@ -102,14 +160,14 @@ class PluginProxy (private val id:String, private val plugin: Plugin, private va
     }
 
     override fun handleMessage(sender: String, tag: String, data: Any?) {
-        val delimiterPas = tag.indexOf('#')
-        if (delimiterPas >= 0 && tag.startsWith(id)) {
-            val seq = Integer.parseInt(tag.substring(delimiterPas + 1))
-            val listener = responseListeners[seq] ?: return
-            if (listener.handle(sender, id, data)) {
-                responseListeners.remove(seq)
-            }
+        val seq = ResponseAddress.parseSeq(tag, id)
+        if (seq < 0) return
+
+        val listener = responseListeners.get(seq) ?: return
+        if (listener.handle(sender, id, data)) {
+            responseListeners.remove(seq)
         }
+        removeExpiredResponses()
     }
 
     override fun setTimer(delay: Long, responseListener: ResponseListener): Int {
@@ -121,12 +179,7 @@ class PluginProxy (private val id:String, private val plugin: Plugin, private va
     }
 
     override fun cancelTimer(id: Int) {
-        timers.forEach {
-            if (it.hashCode() == id) {
-                it.stop()
-                return
-            }
-        }
+        timers[id]?.stop()
     }
 
     override fun getProperties() = properties
@@ -197,6 +250,28 @@ class PluginProxy (private val id:String, private val plugin: Plugin, private va
     }
 
     companion object {
+        /** Time after which plugin stops waiting for responses to message sent with response listener, ms, 0 to wait forever.
+         * Set by core property responseTimeout. Requests to timers never expire, see [sendRequest]. **/
+        @JvmStatic
+        @Volatile
+        var responseTimeout = 600000L
+
+        /** Time after which future of request without explicit timeout is completed with TimeoutException, ms. **/
+        @JvmStatic
+        @Volatile
+        var requestTimeout = 600000L
+
+        private const val TIMER_TAG = "core-utils:notify-after-delay"
+
+        /** How often expired requests are searched, ms. **/
+        private const val EXPIRATION_CHECK_PERIOD = 1000L
+
+        private val timeoutScheduler = ScheduledThreadPoolExecutor(1) { runnable ->
+            val thread = Thread(runnable, "deskchan-request-timeouts")
+            thread.isDaemon = true
+            thread
+        }.apply { removeOnCancelPolicy = true }
+
         @Throws(Exception::class)
         fun create(plugin: Plugin, id: String, config: PluginConfig?): PluginProxy? {
             val entity = PluginProxy(id, plugin, config ?: PluginConfig())
@@ -245,70 +320,83 @@ class PluginProxy (private val id:String, private val plugin: Plugin, private va
 
     /* Timers */
 
-    protected var timers: MutableList<CoreTimerTask> = mutableListOf()
+    protected val timers: MutableMap<Int, CoreTimerTask> = ConcurrentHashMap()
 
+    /** Timer is one request to "core-utils:notify-after-delay" with count of notifications,
+     * so periodic timer costs no messages between ticks. **/
     inner class CoreTimerTask(val delay: Long, var count: Int, val response: ResponseListener) : ResponseListener, Runnable {
 
-        protected var lastSeq: Any? = null
+        protected var lastSeq: Int = -1
 
         init {
-            timers.add(this)
+            timers[hashCode()] = this
             start()
         }
 
         override fun handle(sender: String, data: Any?) {
-            run()
             if (count > 0) count--
-            if (count == 0) return
-            lastSeq = null
-            start()
+            if (count == 0) timers.remove(hashCode())
+            run()
         }
 
         fun start() {
-            if (lastSeq != null) stop()
-            lastSeq = sendMessage("core-utils:notify-after-delay", mapOf("delay" to delay), this)
+            if (lastSeq > 0) stop()
+            val ticks = if (count == 0) 1 else count
+            lastSeq = sendTimerRequest(mapOf("delay" to delay, "count" to ticks), this, ticks)
+            if (lastSeq < 0) timers.remove(hashCode())
         }
 
         fun stop() {
-            if (lastSeq != null)
-                sendMessage("core-utils:notify-after-delay", mapOf("cancel" to lastSeq))
-            timers.remove(this)
+            if (lastSeq > 0) {
+                sendMessage(TIMER_TAG, mapOf("cancel" to lastSeq))
+                responseListeners.remove(lastSeq)
+            }
+            timers.remove(hashCode())
         }
 
         override fun run() {
             response.handle(getId(), null)
         }
     }
-}
 
-internal class ResponseInfo {
-    private var count: Int = 0
-    private var res: ResponseListener? = null
-    private var ret: ResponseListener? = null
+    // Timer can be longer than response timeout, so it waits for responses forever
+    private fun sendTimerRequest(data: Map<String, Any>, listener: ResponseListener, ticks: Int): Int {
+        if (PluginManager.getInstance().getMessageListenersCount(TIMER_TAG) == 0)
+            return -1
 
-    constructor(responseListener: ResponseListener, count: Int) {
-        this.count = count
-        res = responseListener
-        ret = null
+        val seq = nextSeq()
+        // Infinite timer gets negative responses count, which never reaches zero
+        responseListeners.put(seq, ResponseInfo(listener, if (ticks > 0) ticks else -1), PendingResponses.NEVER)
+        PluginManager.getInstance().sendMessage(ResponseAddress.format(id, seq), TIMER_TAG, data)
+        return seq
     }
+}
 
-    constructor(responseListener: ResponseListener, count: Int, returnListener: ResponseListener) {
-        this.count = count
-        res = responseListener
-        ret = returnListener
-    }
+internal open class ResponseInfo(private val res: ResponseListener, count: Int, private val ret: ResponseListener? = null) {
+    private val count = AtomicInteger(count)
 
     fun handle(sender: String, id: String, data: Any?): Boolean {
-        res!!.handle(sender, data)
-        count--
-        if (count == 0) {
-            if (ret != null) ret!!.handle(id, null)
+        res.handle(sender, data)
+        if (count.decrementAndGet() == 0) {
+            ret?.handle(id, null)
             return true
         }
         return false
     }
+
+    /** Called if not all of receivers responded in time. Futures are not expired here, they are completed by timeout scheduler. **/
+    fun expire(id: String) {
+        ret?.handle(id, null)
+    }
 }
 
+/** Collects responses to list and completes future with it after all of receivers responded. **/
+internal class FutureResponseInfo(count: Int, private val future: CompletableFuture<List<Any?>>,
+                                  responses: MutableList<Any?> = Collections.synchronizedList(ArrayList<Any?>()))
+    : ResponseInfo(ResponseListener { _, data -> responses.add(data) },
+                   count,
+                   ResponseListener { _, _ -> future.complete(ArrayList(responses)) })
+
 // Override getBundle to correctly read bundles in UTF-8
 internal class UTF8Control : ResourceBundle.Control() {
     @Throws(IllegalAccessException::class, InstantiationException::class, IOException::class)
@@ -1,6 +1,7 @@
 package info.deskchan.core
 
 import java.nio.file.Path
+import java.util.concurrent.CompletableFuture
 
 interface PluginProxyInterface : MessageListener {
 
@@ -32,6 +33,25 @@ interface PluginProxyInterface : MessageListener {
      */
     fun sendMessage(tag: String, data: Any?, responseListener: ResponseListener): Any
 
+    /** Send message at tag through core and collect responses of all receivers.
+     * Future is completed on the thread of the last response, use *Async methods of future to continue on other thread.
+     * Cancel future if you don't need responses anymore.
+     * @param tag Tag
+     * @param data Any data that will be sent with message, can be null
+     * @return Future of list of responses, it's completed after all of receivers responded to your message,
+     * or completed exceptionally with TimeoutException if they didn't respond in default response timeout
+     */
+    fun request(tag: String, data: Any?): CompletableFuture<List<Any?>>
+
+    /** Send message at tag through core and collect responses of all receivers.
+     * @param tag Tag
+     * @param data Any data that will be sent with message, can be null
+     * @param timeout Max time to wait for responses, ms, 0 to wait forever
+     * @return Future of list of responses
+     * @see request
+     */
+    fun request(tag: String, data: Any?, timeout: Long): CompletableFuture<List<Any?>>
+
     /** Add listener to tag. All messages from everywhere in program will be received by this listener. */
     fun addMessageListener(tag: String, listener: MessageListener)
 
@@ -1,6 +1,5 @@
 package info.deskchan.groovy_support
 
-import groovy.lang.GroovyShell
 import info.deskchan.core.*
 import org.codehaus.groovy.control.CompilerConfiguration
 
@@ -9,7 +8,10 @@ import java.nio.file.Path
 
 class Main : Plugin, PluginLoader {
 
+    private lateinit var scriptCache: ScriptCache
+
     override fun initialize(pluginProxy: PluginProxyInterface): Boolean {
+        scriptCache = ScriptCache(pluginProxy.dataDirPath.resolve("compiled"), { pluginProxy.log(it) })
         PluginManager.getInstance().registerPluginLoader(this)
         try {
             PluginManager.getInstance().initializePlugin("scenario", ScenarioPlugin(), PluginConfig.Internal)
@@ -54,9 +56,9 @@ class Main : Plugin, PluginLoader {
         compilerConfiguration.sourceEncoding = "UTF-8"
         compilerConfiguration.scriptBaseClass = "info.deskchan.groovy_support.GroovyPlugin"
         compilerConfiguration.setClasspath(path.parent.toString())
-        val groovyShell = GroovyShell(compilerConfiguration)
-        val script = groovyShell.parse(path.toFile())
-        val plugin = script as GroovyPlugin
+        val source = String(Files.readAllBytes(path), Charsets.UTF_8)
+        val className = path.fileName.toString().removeSuffix(".groovy")
+        val plugin = scriptCache.parse(id, path, className, source, compilerConfiguration) as GroovyPlugin
         plugin.pluginDirPath = path.parent
         val config = PluginConfig("Groovy")
         path = path.parent.resolve("manifest.json")
@@ -1,6 +1,5 @@
 package info.deskchan.groovy_support
 
-import groovy.lang.GroovyShell
 import info.deskchan.core.MessageListener
 import info.deskchan.core.Plugin
 import info.deskchan.core.PluginProxyInterface
@@ -21,6 +20,7 @@ class ScenarioPlugin : Plugin {
     override fun initialize(pluginProxyInterface: PluginProxyInterface): Boolean {
 
         pluginProxy = pluginProxyInterface
+        scriptCache = ScriptCache(pluginProxy.dataDirPath.resolve("compiled"), { pluginProxy.log(it) })
         pluginProxy.setResourceBundle("info/deskchan/groovy_support/strings")
         pluginProxy.setConfigField("name", pluginProxy.getString("scenario-plugin-name"))
         pluginProxy.getProperties().load()
@@ -134,6 +134,7 @@ class ScenarioPlugin : Plugin {
 
     companion object {
         internal lateinit var pluginProxy: PluginProxyInterface
+        private lateinit var scriptCache: ScriptCache
 
         private fun findNextBracket(line: String, start: Int): Int {
             var end: Int
@@ -156,7 +157,6 @@ class ScenarioPlugin : Plugin {
             if (!path.isAbsolute)
                 path = pluginProxy.assetsDirPath.resolve("scenarios").resolve(pathString).toFile()
             compilerConfiguration.setClasspath(path.parent.toString())
-            val groovyShell = GroovyShell(compilerConfiguration)
             var scriptLines: MutableList<String>? = null
             try {
                 scriptLines = Files.readAllLines(path.toPath(), Charset.forName("UTF-8"))
@@ -205,7 +205,8 @@ class ScenarioPlugin : Plugin {
                 scriptText.append(scriptLines[it])
                 scriptText.append("\n")
             }
-            val script = groovyShell.parse(scriptText.toString())
+            // Scenarios are cached after translation to Groovy, so changes of translation rules also recompile them
+            val script = scriptCache.parse(path.name, path.toPath(), "ScenarioScript", scriptText.toString(), compilerConfiguration)
             return script as Scenario
         }
 
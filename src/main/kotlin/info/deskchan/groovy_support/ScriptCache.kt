@@ -0,0 +1,192 @@
+package info.deskchan.groovy_support
+
+import groovy.lang.Binding
+import groovy.lang.GroovyClassLoader
+import groovy.lang.GroovyShell
+import groovy.lang.GroovySystem
+import groovy.lang.Script
+import org.codehaus.groovy.control.CompilationUnit
+import org.codehaus.groovy.control.CompilerConfiguration
+import org.codehaus.groovy.control.Phases
+import org.codehaus.groovy.runtime.InvokerHelper
+import org.codehaus.groovy.tools.GroovyClass
+import java.io.IOException
+import java.net.URL
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+
+/** On-disk cache of compiled Groovy scripts.
+ * Every entry is a directory with class files of script and all classes it compiled from its classpath.
+ * Entry is keyed by absolute path and text of script, compiler settings, Groovy version and script base class build.
+ * Entry also lists sources that script imported from its classpath with hashes of their contents, and it is
+ * compiled again if any of them changed, so editing other scripts in the same folder doesn't affect it.
+ * Only last compiled version of every script file is kept. **/
+class ScriptCache(private val dir: Path, private val log: (String) -> Unit) {
+
+    /** Load compiled script from cache or compile it and put to cache.
+     * @param id Name of script, used in log and names of cache entries
+     * @param file File of script, only last version of every file is kept in cache
+     * @param className Name of script class
+     * @param source Text of script
+     * @param config Compiler configuration
+     * @return New instance of script **/
+    fun parse(id: String, file: Path, className: String, source: String, config: CompilerConfiguration): Script {
+        val start = System.nanoTime()
+
+        // Dependencies grabbed at compile time are added only to class loader that compiled script
+        if (source.contains("@Grab")) {
+            val script = GroovyShell(javaClass.classLoader, Binding(), config).parse(source, "$className.groovy")
+            log("Script $id compiled in ${(System.nanoTime() - start) / 1000000} ms, not cached because it uses Grape")
+            return script
+        }
+
+        val path = file.toAbsolutePath().normalize().toString()
+        val prefix = id.replace(Regex("[^\\w.-]"), "_") + "-" + sha256(path.toByteArray(Charsets.UTF_8)).substring(0, 8) + "-"
+        val entry = dir.resolve(prefix + hash(path, className, source, config))
+        var compiled = try {
+            readEntry(entry)
+        } catch (e: Exception) {
+            log("Cannot read compiled script $id from cache: $e")
+            null
+        }
+
+        val hit = compiled != null
+        if (compiled == null) {
+            compiled = compile(className, source, config)
+            try {
+                writeEntry(entry, compiled)
+                removeOldEntries(prefix, entry)
+            } catch (e: IOException) {
+                log("Cannot save compiled script $id to cache: $e")
+            }
+        }
+
+        val loader = CachedClassLoader(javaClass.classLoader, config, HashMap(compiled.classes))
+        val script = InvokerHelper.createScript(loader.loadClass(compiled.mainClass), Binding())
+        log("Script $id " + (if (hit) "loaded from cache" else "compiled") + " in ${(System.nanoTime() - start) / 1000000} ms")
+        return script
+    }
+
+    /** @param dependencies Hashes of contents of sources compiled together with script, by their URLs **/
+    private class CompiledScript(val mainClass: String, val classes: Map<String, ByteArray>, val dependencies: Map<String, String>)
+
+    private fun compile(className: String, source: String, config: CompilerConfiguration): CompiledScript {
+        val unit = CompilationUnit(config, null, GroovyClassLoader(javaClass.classLoader, config))
+        val sourceUnit = unit.addSource("$className.groovy", source)
+        unit.compile(Phases.CLASS_GENERATION)
+
+        val classes = HashMap<String, ByteArray>()
+        for (cls in unit.classes)
+            (cls as GroovyClass).let { classes[it.name] = it.bytes }
+        val mainClass = sourceUnit.ast.classes.firstOrNull { it.isScript }?.name ?: className
+
+        // Sources found in classpath are added to unit by their URLs
+        val dependencies = HashMap<String, String>()
+        for (unitSource in unit.iterator()) {
+            if (unitSource !== sourceUnit)
+                dependencies[unitSource.name] = sha256(URL(unitSource.name).readBytes())
+        }
+        return CompiledScript(mainClass, classes, dependencies)
+    }
+
+    /** Read entry from cache.
+     * @return Compiled script, or null if cache doesn't have it or any of its dependencies changed **/
+    private fun readEntry(entry: Path): CompiledScript? {
+        val main = entry.resolve(MAIN_CLASS_FILE)
+        if (!Files.isReadable(main)) return null
+
+        val dependencies = HashMap<String, String>()
+        for (line in Files.readAllLines(entry.resolve(DEPENDENCIES_FILE), Charsets.UTF_8)) {
+            if (line.isEmpty()) continue
+            val hash = line.substringBefore(' ')
+            val url = line.substringAfter(' ')
+            val current = try { sha256(URL(url).readBytes()) } catch (e: IOException) { null }
+            if (current != hash) return null
+            dependencies[url] = hash
+        }
+
+        val classes = HashMap<String, ByteArray>()
+        entry.toFile().listFiles { _, name -> name.endsWith(".class") }.forEach {
+            classes[it.name.substring(0, it.name.length - 6)] = it.readBytes()
+        }
+        return CompiledScript(String(Files.readAllBytes(main), Charsets.UTF_8), classes, dependencies)
+    }
+
+    // Entry is written to temporary directory and then renamed, so other threads never see half-written entry
+    private fun writeEntry(entry: Path, compiled: CompiledScript) {
+        Files.createDirectories(dir)
+        // Existing entry was compiled with other versions of dependencies
+        if (Files.exists(entry)) entry.toFile().deleteRecursively()
+
+        val temp = Files.createTempDirectory(dir, "tmp")
+        try {
+            compiled.classes.forEach { name, bytes -> Files.write(temp.resolve("$name.class"), bytes) }
+            Files.write(temp.resolve(DEPENDENCIES_FILE), compiled.dependencies.map { (url, hash) -> "$hash $url" }, Charsets.UTF_8)
+            Files.write(temp.resolve(MAIN_CLASS_FILE), compiled.mainClass.toByteArray(Charsets.UTF_8))
+            Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE)
+        } finally {
+            if (Files.exists(temp)) temp.toFile().deleteRecursively()
+        }
+    }
+
+    private fun removeOldEntries(prefix: String, current: Path) {
+        dir.toFile().listFiles { file -> file.isDirectory && file.name.startsWith(prefix) && file.toPath() != current }
+                ?.forEach { it.deleteRecursively() }
+    }
+
+    private fun hash(path: String, className: String, source: String, config: CompilerConfiguration): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        fun update(value: String) {
+            digest.update(value.toByteArray(Charsets.UTF_8))
+            digest.update(0)
+        }
+
+        update(GroovySystem.getVersion())
+        update(config.scriptBaseClass ?: "")
+        update(config.sourceEncoding ?: "")
+        update(path)
+        update(className)
+        update(source)
+
+        // Script base class changes with DeskChan build, so its bytecode is part of key too
+        val baseClass = config.scriptBaseClass
+        if (baseClass != null) {
+            javaClass.classLoader.getResourceAsStream(baseClass.replace('.', '/') + ".class")?.use {
+                digest.update(it.readBytes())
+            }
+        }
+
+        return digest.digest().toHex()
+    }
+
+    private fun sha256(bytes: ByteArray) = MessageDigest.getInstance("SHA-256").digest(bytes).toHex()
+
+    private fun ByteArray.toHex() = joinToString("") { String.format("%02x", it) }
+
+    /** Defines classes from cache on first request, so classes compiled together with script are never
+     * compiled again from sources found in classpath. **/
+    private class CachedClassLoader(parent: ClassLoader, config: CompilerConfiguration, private val classes: MutableMap<String, ByteArray>)
+        : GroovyClassLoader(parent, config) {
+
+        override fun loadClass(name: String, lookupScriptFiles: Boolean, preferClassOverScript: Boolean, resolve: Boolean): Class<*> {
+            // Other threads wait here until class is defined, otherwise they would compile it from sources.
+            // Loader itself is the lock, because JVM takes it too when it resolves classes for this loader
+            synchronized(this) {
+                val bytes = classes.remove(name)
+                if (bytes != null) {
+                    val cls = defineClass(name, bytes)
+                    setClassCacheEntry(cls)
+                    return cls
+                }
+            }
+            return super.loadClass(name, lookupScriptFiles, preferClassOverScript, resolve)
+        }
+    }
+
+    companion object {
+        private const val MAIN_CLASS_FILE = "main-class"
+        private const val DEPENDENCIES_FILE = "dependencies"
+    }
+}
@@ -0,0 +1,33 @@
+package info.deskchan.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTests {
+
+    @Test
+    public void testPercentiles(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++)
+            histogram.record(i * 1000000L);
+
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(500.5, histogram.getMean(), 0.01);
+        Assert.assertEquals(1000, histogram.getMax(), 0.01);
+        Assert.assertEquals(500, histogram.getPercentile(50), 500 * 0.125);
+        Assert.assertEquals(990, histogram.getPercentile(99), 990 * 0.125);
+        Assert.assertEquals(1000, histogram.getPercentile(100), 0.01);
+    }
+
+    @Test
+    public void testEmptyAndSmallValues(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getPercentile(50), 0);
+
+        histogram.record(3000);
+        histogram.record(-5);
+        Assert.assertEquals(2, histogram.getCount());
+        Assert.assertEquals(0.003, histogram.getMax(), 0.0001);
+        Assert.assertEquals(0, histogram.getPercentile(50), 0.0001);
+    }
+}
@@ -0,0 +1,51 @@
+package info.deskchan.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class PendingResponsesTests {
+
+    @Test
+    public void testPutGetRemove(){
+        PendingResponses<String> table = new PendingResponses<>();
+        for (int i = 1; i <= 1000; i++)
+            table.put(i, "value" + i, PendingResponses.NEVER);
+        Assert.assertEquals(1000, table.size());
+
+        for (int i = 1; i <= 1000; i += 2)
+            Assert.assertEquals("value" + i, table.remove(i));
+        Assert.assertEquals(500, table.size());
+        Assert.assertNull(table.remove(1));
+
+        for (int i = 1; i <= 1000; i++)
+            Assert.assertEquals(i % 2 == 0 ? "value" + i : null, table.get(i));
+    }
+
+    @Test
+    public void testRemoveExpired(){
+        PendingResponses<Integer> table = new PendingResponses<>();
+        for (int i = 1; i <= 100; i++)
+            table.put(i, i, i % 3 == 0 ? 50 : PendingResponses.NEVER);
+
+        List<Integer> expired = table.removeExpired(100);
+        Assert.assertEquals(33, expired.size());
+        Assert.assertEquals(67, table.size());
+        for (int i = 1; i <= 100; i++)
+            Assert.assertEquals(i % 3 == 0 ? null : (Integer) i, table.get(i));
+
+        Assert.assertTrue(table.removeExpired(100).isEmpty());
+    }
+
+    @Test
+    public void testResponseAddress(){
+        String address = ResponseAddress.format("talking_system", 42);
+        Assert.assertEquals("talking_system#42", address);
+        Assert.assertEquals(42, ResponseAddress.parseSeq(address, "talking_system"));
+        Assert.assertEquals(-1, ResponseAddress.parseSeq(address, "talking"));
+        Assert.assertEquals(-1, ResponseAddress.parseSeq("talking_system#", "talking_system"));
+        Assert.assertEquals(-1, ResponseAddress.parseSeq("talking_system#4a", "talking_system"));
+        Assert.assertEquals(-1, ResponseAddress.parseSeq("talking_system#99999999999", "talking_system"));
+    }
+}
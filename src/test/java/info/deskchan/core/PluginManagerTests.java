@@ -3,7 +3,17 @@ package info.deskchan.core;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class PluginManagerTests {
     static PluginManager pluginManager;
@@ -22,4 +32,89 @@ public class PluginManagerTests {
             System.out.println(plugin);
         }
     }
+
+    @Test
+    public void testListenersChangedWhileSending() {
+        List<String> received = new ArrayList<>();
+        MessageListener second = (sender, tag, data) -> received.add("second");
+        MessageListener first = new MessageListener() {
+            @Override
+            public void handleMessage(String sender, String tag, Object data) {
+                received.add("first");
+                pluginManager.unregisterMessageListener(tag, this);
+                pluginManager.registerMessageListener(tag, (s, t, d) -> received.add("third"));
+            }
+        };
+        pluginManager.registerMessageListener("test:snapshot", first);
+        pluginManager.registerMessageListener("test:snapshot", second);
+        pluginManager.registerMessageListener("test:snapshot", second);
+        assertEquals(2, pluginManager.getMessageListenersCount("test:snapshot"));
+
+        pluginManager.sendMessage("test", "test:snapshot", null);
+        assertEquals(2, received.size());
+        assertEquals(2, pluginManager.getMessageListenersCount("test:snapshot"));
+
+        received.clear();
+        pluginManager.sendMessage("test", "test:snapshot", null);
+        assertEquals(2, received.size());
+        assertEquals("second", received.get(0));
+        assertEquals("third", received.get(1));
+    }
+
+    @Test
+    public void testAsyncDeliveryKeepsOrder() throws InterruptedException {
+        List<Integer> received = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(100);
+        PluginMailbox mailbox = new PluginMailbox("test");
+        MessageListener listener = (sender, tag, data) -> {
+            received.add((Integer) data);
+            latch.countDown();
+        };
+        pluginManager.registerMessageListener("test:async", listener, mailbox);
+        pluginManager.setDeliveryMode(true, 10, PluginMailbox.Overflow.BLOCK);
+        try {
+            for (int i = 0; i < 100; i++)
+                pluginManager.sendMessage("test", "test:async", i);
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } finally {
+            pluginManager.setDeliveryMode(false, 10, PluginMailbox.Overflow.BLOCK);
+            pluginManager.unregisterMessageListener("test:async", listener);
+            mailbox.close();
+        }
+        for (int i = 0; i < 100; i++)
+            assertEquals(i, (int) received.get(i));
+    }
+
+    @Test
+    public void testRequestFuture() throws Throwable {
+        pluginManager.initializeInnerPlugin("test-responder", new Plugin() {
+            @Override
+            public boolean initialize(PluginProxyInterface proxy) {
+                proxy.addMessageListener("test:request", (sender, tag, data) -> proxy.sendMessage(sender, "first"));
+                proxy.addMessageListener("test:request", (sender, tag, data) -> proxy.sendMessage(sender, "second"));
+                proxy.addMessageListener("test:silent", (sender, tag, data) -> { });
+                return true;
+            }
+        });
+        pluginManager.initializeInnerPlugin("test-requester", new Plugin() { });
+        PluginProxyInterface requester = pluginManager.getPlugin("test-requester");
+        try {
+            List<Object> responses = requester.request("test:request", null).get(5, TimeUnit.SECONDS);
+            assertEquals(2, responses.size());
+            assertTrue(responses.contains("first") && responses.contains("second"));
+
+            assertTrue(requester.request("test:nobody", null).get(5, TimeUnit.SECONDS).isEmpty());
+
+            CompletableFuture<List<Object>> silent = requester.request("test:silent", null, 100);
+            try {
+                silent.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+        } finally {
+            pluginManager.unloadPlugin("test-responder");
+            pluginManager.unloadPlugin("test-requester");
+        }
+    }
 }
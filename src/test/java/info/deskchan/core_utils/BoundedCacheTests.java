@@ -0,0 +1,74 @@
+package info.deskchan.core_utils;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class BoundedCacheTests {
+
+    // Small caches have one segment, so their LRU order is exact
+    private BoundedCache<String, Integer> cache;
+
+    @Before
+    public void before(){
+        cache = new BoundedCache<>(4);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.put("d", 4);
+    }
+
+    @Test
+    public void testEviction(){
+        Assert.assertEquals(4, cache.size());
+        cache.put("e", 5);
+        Assert.assertEquals(4, cache.size());
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(Integer.valueOf(5), cache.get("e"));
+    }
+
+    @Test
+    public void testLruOrder(){
+        cache.get("a");
+        cache.put("e", 5);
+        cache.put("f", 6);
+        Assert.assertEquals(Integer.valueOf(1), cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertNull(cache.get("c"));
+        Assert.assertEquals(Integer.valueOf(4), cache.get("d"));
+    }
+
+    @Test
+    public void testLoaderFirstWriterWins() throws Exception {
+        // Other thread puts value while loader works, so value loaded later is dropped
+        Integer value = cache.get("x", key -> {
+            cache.put(key, 10);
+            return 20;
+        });
+        Assert.assertEquals(Integer.valueOf(10), value);
+        Assert.assertEquals(Integer.valueOf(10), cache.get("x"));
+
+        Assert.assertEquals(Integer.valueOf(4), cache.get("d", key -> 30));
+        Assert.assertNull(cache.get("y", key -> null));
+        Assert.assertNull(cache.get("y"));
+    }
+
+    @Test
+    public void testStats(){
+        cache.get("a");
+        cache.get("b");
+        cache.get("z");
+        cache.put("e", 5);
+        cache.put("f", 6);
+
+        Map<String, Object> stats = cache.getStats();
+        Assert.assertEquals(2L, stats.get("hits"));
+        Assert.assertEquals(1L, stats.get("misses"));
+        Assert.assertEquals(2L, stats.get("evictions"));
+        Assert.assertEquals(4, stats.get("size"));
+        Assert.assertEquals(4, stats.get("limit"));
+        Assert.assertEquals(2f / 3, cache.getHitRate(), 1e-6);
+    }
+}
@@ -0,0 +1,58 @@
+package info.deskchan.core_utils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TimerWheelTests {
+
+    private final TimerWheel wheel = new TimerWheel(5, 8, "test-timers");
+
+    @After
+    public void after(){
+        wheel.stop();
+    }
+
+    @Test
+    public void testSingleShot() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.currentTimeMillis();
+        wheel.schedule("a", "a#1", 30, 30, 1, t -> latch.countDown());
+        Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+        Assert.assertTrue(System.currentTimeMillis() - start >= 25);
+        Assert.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testPeriodic() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(3);
+        AtomicInteger last = new AtomicInteger();
+        // Period is longer than one turn of wheel
+        wheel.schedule("a", "a#1", 10, 60, 3, t -> {
+            if (!t.isActive()) last.incrementAndGet();
+            latch.countDown();
+        });
+        Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+        Assert.assertEquals(1, last.get());
+        Assert.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        AtomicInteger fired = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        wheel.schedule("a", "a#1", 20, 20, -1, t -> fired.incrementAndGet());
+        wheel.schedule("a", "a#2", 20, 20, 1, t -> fired.incrementAndGet());
+        wheel.schedule("b", "b#1", 40, 40, 1, t -> latch.countDown());
+        Assert.assertTrue(wheel.cancel("a#1"));
+        Assert.assertFalse(wheel.cancel("a#1"));
+        Assert.assertEquals(1, wheel.cancelAll("a").size());
+        Assert.assertEquals(1, wheel.size());
+        Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+        Assert.assertEquals(0, fired.get());
+    }
+}
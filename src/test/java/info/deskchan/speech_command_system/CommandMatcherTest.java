@@ -0,0 +1,94 @@
+package info.deskchan.speech_command_system;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CommandMatcherTest {
+
+    private static final String[] rules = {
+            "погода",
+            "поставь таймер {datetime:RelativeDateTime}",
+            "(открой|запусти) браузер",
+            "включи компьютер",
+            "(перейди|открой) ?ярлык (папку|файл)",
+            "(посчитай|вычисли|(забей ?в калькулятор)) ?(выражение|пример) {text:Text}",
+            "рабочий день {start:DateTime} {end:DateTime}",
+            " ?some ?english words",
+            "(список команд)|(что умеешь)",
+            "!напомни мне {text:Text}",
+            "скажи ?нибудь (смешное|весёлое)",
+            "(выключи|отключи) ?(свет|лампу)",
+            "какая сегодня погода",
+            "поиграем",
+            "выключи включи"
+    };
+
+    // Words of speech, including misspelled ones and words joined together, which parser splits
+    private static final String[] vocabulary = {
+            "поставь", "таймер", "на", "2", "секунды", "пять", "минут", "рабочий", "день", "с", "10", "до",
+            "открой", "мне", "браузер", "включи", "кампуктер", "запусти", "забей", "в", "калькулятор", "пример",
+            "ярлык", "папка", "перейди", "файл", "погоду", "погодка", "список", "команд", "что", "умеешь",
+            "напомни", "скажи", "смешное", "выключи", "свет", "лампочку", "сегодня", "поиграем",
+            "браузероткрой", "открыйбраузер", "калькуляторпример", "some", "english", "words", "ком", "анд"
+    };
+
+    private static Main.Command[] createCommands(){
+        Main.Command[] commands = new Main.Command[rules.length];
+        for (int i = 0; i < rules.length; i++) {
+            Map<String, Object> map = new HashMap<>();
+            map.put("tag", "test:" + i);
+            map.put("rule", rules[i]);
+            commands[i] = new Main.Command(map);
+        }
+        return commands;
+    }
+
+    @Test
+    public void testAcceptedRulesAreNeverPruned(){
+        Main.Command[] commands = createCommands();
+        CommandMatcher matcher = new CommandMatcher(commands);
+
+        Random random = new Random(7);
+        for (int t = 0; t < 500; t++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0, length = 1 + random.nextInt(5); j < length; j++)
+                sb.append(vocabulary[random.nextInt(vocabulary.length)]).append(' ');
+            String text = sb.toString();
+            ArrayList<String> words = PhraseComparison.toClearWords(text);
+
+            BitSet selected = matcher.select(words);
+            for (int i = 0; i < commands.length; i++) {
+                if (selected.get(i)) continue;
+                assertFalse("Rule \"" + rules[i] + "\" is pruned for \"" + text + "\"",
+                        commands[i].rule.parse(text, words).better(null));
+            }
+        }
+    }
+
+    @Test
+    public void testWordMatchingPartOfSpeechWord(){
+        Main.Command[] commands = createCommands();
+        CommandMatcher matcher = new CommandMatcher(commands);
+
+        // "включи" is found only in the part left after "выключи" splits the word
+        String text = "выключивключи";
+        ArrayList<String> words = PhraseComparison.toClearWords(text);
+        assertTrue(commands[14].rule.parse(text, words).better(null));
+        assertTrue(matcher.select(words).get(14));
+    }
+
+    @Test
+    public void testUnrelatedRulesArePruned(){
+        Main.Command[] commands = createCommands();
+        CommandMatcher matcher = new CommandMatcher(commands);
+
+        BitSet selected = matcher.select(PhraseComparison.toClearWords("выключи свет"));
+        assertTrue(selected.get(11));
+        assertFalse(selected.get(0));
+        assertFalse(selected.get(2));
+    }
+}
@@ -0,0 +1,47 @@
+package info.deskchan.talking_system;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+
+public class MeaningExtractorTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Digits are removed from words and repeated letters are merged, so numbers are written by distinct letters
+    private static String word(int i, int j){
+        return "w" + (char) ('a' + i / 20) + (char) ('f' + i % 20) + "-" + (char) ('a' + j);
+    }
+
+    @Test
+    public void testTeachAndReload() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("meanings.model");
+        MeaningExtractor extractor = new MeaningExtractor(file);
+        extractor.teach("hello there", "greeting");
+        extractor.teach("goodbye", "farewell");
+
+        Assert.assertEquals("GREETING", extractor.analyze("hello"));
+        Assert.assertEquals("FAREWELL", extractor.analyze("goodbye"));
+        Assert.assertNull(extractor.analyze("unknown"));
+
+        // Enough words and meanings to rebuild table with bigger capacity and more meanings in records
+        for (int i = 0; i < 40; i++)
+            for (int j = 0; j < 20; j++)
+                extractor.teach(word(i, j), "meaning" + i);
+        extractor.save();
+
+        MeaningExtractor reloaded = new MeaningExtractor(file);
+        Assert.assertEquals("GREETING", reloaded.analyze("hello"));
+        Assert.assertEquals("FAREWELL", reloaded.analyze("goodbye"));
+        for (int i = 0; i < 40; i++)
+            Assert.assertEquals("MEANING" + i, reloaded.analyze(word(i, 7)));
+
+        reloaded.teach("hello", "farewell");
+        reloaded.teach("hello", "farewell");
+        Assert.assertEquals("FAREWELL", reloaded.analyze("hello"));
+    }
+}